@@ -0,0 +1,140 @@
+package com.sap.openui5;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The class <code>BufferPool</code> keeps a limited number of byte buffers
+ * which are reused to copy content into the response instead of allocating
+ * new buffers for each request.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+final class BufferPool {
+
+
+  /** size of the pooled buffers */
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  /** max. number of pooled buffers */
+  private static final int MAX_POOL_SIZE = 32;
+
+
+  /** the pooled buffers */
+  private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<byte[]>();
+
+  /** number of pooled buffers (the size of the queue is not constant time) */
+  private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+
+  /**
+   * no instances
+   */
+  private BufferPool() {
+  } // constructor
+
+
+  /**
+   * takes a buffer from the pool or creates a new one if the pool is empty
+   * @return the buffer
+   */
+  static byte[] acquire() {
+    byte[] buffer = POOL.poll();
+    if (buffer != null) {
+      POOL_SIZE.decrementAndGet();
+    } else {
+      buffer = new byte[BUFFER_SIZE];
+    }
+    return buffer;
+  } // method: acquire
+
+
+  /**
+   * returns the buffer into the pool (if the pool is not full)
+   * @param buffer the buffer
+   */
+  static void release(byte[] buffer) {
+    if (buffer != null && buffer.length == BUFFER_SIZE && POOL_SIZE.incrementAndGet() <= MAX_POOL_SIZE) {
+      POOL.offer(buffer);
+    } else if (buffer != null && buffer.length == BUFFER_SIZE) {
+      POOL_SIZE.decrementAndGet();
+    }
+  } // method: release
+
+
+  /**
+   * copies the content of the input stream into the output stream by
+   * using a pooled buffer
+   * @param is the input stream
+   * @param os the output stream
+   * @return number of copied bytes
+   * @throws IOException
+   */
+  static long copy(InputStream is, OutputStream os) throws IOException {
+    byte[] buffer = acquire();
+    try {
+      long count = 0;
+      int n;
+      while ((n = is.read(buffer)) != -1) {
+        os.write(buffer, 0, n);
+        count += n;
+      }
+      return count;
+    } finally {
+      release(buffer);
+    }
+  } // method: copy
+
+
+  /**
+   * copies the given number of bytes of the input stream into the output
+   * stream by using a pooled buffer
+   * @param is the input stream
+   * @param os the output stream
+   * @param length number of bytes to copy
+   * @throws IOException if the input stream ends before
+   */
+  static void copy(InputStream is, OutputStream os, long length) throws IOException {
+    byte[] buffer = acquire();
+    try {
+      while (length > 0) {
+        int n = is.read(buffer, 0, (int) Math.min(buffer.length, length));
+        if (n == -1) {
+          throw new EOFException("Unexpected end of stream (" + length + " bytes missing)!");
+        }
+        os.write(buffer, 0, n);
+        length -= n;
+      }
+    } finally {
+      release(buffer);
+    }
+  } // method: copy
+
+
+  /**
+   * skips the given number of bytes of the input stream
+   * @param is the input stream
+   * @param length number of bytes to skip
+   * @throws IOException if the input stream ends before
+   */
+  static void skip(InputStream is, long length) throws IOException {
+    while (length > 0) {
+      long n = is.skip(length);
+      if (n <= 0) {
+        if (is.read() == -1) {
+          throw new EOFException("Unexpected end of stream (" + length + " bytes missing)!");
+        }
+        n = 1;
+      }
+      length -= n;
+    }
+  } // method: skip
+
+
+} // class: BufferPool
@@ -0,0 +1,117 @@
+package com.sap.openui5;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The class <code>ChunkedBuffer</code> buffers content in a list of fixed-size
+ * slabs taken from the <code>BufferPool</code> instead of a growing array
+ * which needs to be copied. The content can be written from the slabs into
+ * another stream and the slabs must be released into the pool afterwards.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+final class ChunkedBuffer extends OutputStream {
+
+
+  /** the slabs of the buffer */
+  private final List<byte[]> slabs = new ArrayList<byte[]>();
+
+  /** position in the last slab */
+  private int position = BufferPool.BUFFER_SIZE;
+
+  /** size of the buffered content */
+  private long size;
+
+
+  /* (non-Javadoc)
+   * @see java.io.OutputStream#write(int)
+   */
+  @Override
+  public void write(int b) {
+    if (this.position == BufferPool.BUFFER_SIZE) {
+      this.slabs.add(BufferPool.acquire());
+      this.position = 0;
+    }
+    this.slabs.get(this.slabs.size() - 1)[this.position++] = (byte) b;
+    this.size++;
+  } // method: write
+
+
+  /* (non-Javadoc)
+   * @see java.io.OutputStream#write(byte[], int, int)
+   */
+  @Override
+  public void write(byte[] b, int off, int len) {
+    while (len > 0) {
+      if (this.position == BufferPool.BUFFER_SIZE) {
+        this.slabs.add(BufferPool.acquire());
+        this.position = 0;
+      }
+      int count = Math.min(len, BufferPool.BUFFER_SIZE - this.position);
+      System.arraycopy(b, off, this.slabs.get(this.slabs.size() - 1), this.position, count);
+      this.position += count;
+      this.size += count;
+      off += count;
+      len -= count;
+    }
+  } // method: write
+
+
+  /**
+   * returns the size of the buffered content (without copying it)
+   * @return size of the buffered content
+   */
+  long size() {
+    return this.size;
+  } // method: size
+
+
+  /**
+   * writes the buffered content from the slabs into the stream
+   * @param os the stream
+   * @throws IOException
+   */
+  void writeTo(OutputStream os) throws IOException {
+    long remaining = this.size;
+    for (byte[] slab : this.slabs) {
+      int count = (int) Math.min(remaining, slab.length);
+      os.write(slab, 0, count);
+      remaining -= count;
+    }
+  } // method: writeTo
+
+
+  /**
+   * returns a copy of the buffered content
+   * @return the buffered content
+   */
+  byte[] toByteArray() {
+    byte[] content = new byte[(int) this.size];
+    int offset = 0;
+    for (byte[] slab : this.slabs) {
+      int count = Math.min(content.length - offset, slab.length);
+      System.arraycopy(slab, 0, content, offset, count);
+      offset += count;
+    }
+    return content;
+  } // method: toByteArray
+
+
+  /**
+   * releases the slabs into the pool (the buffer is empty afterwards)
+   */
+  void release() {
+    for (byte[] slab : this.slabs) {
+      BufferPool.release(slab);
+    }
+    this.slabs.clear();
+    this.position = BufferPool.BUFFER_SIZE;
+    this.size = 0;
+  } // method: release
+
+
+} // class: ChunkedBuffer
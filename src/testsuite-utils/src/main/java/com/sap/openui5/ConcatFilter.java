@@ -1,11 +1,33 @@
 package com.sap.openui5;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -19,10 +41,32 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
 
 /**
  * The class <code>ConcatFilter</code> is used to concatenate files like
- * sap-ui-core.js, sap-ui-core-nojQuery.js and sap-ui-debug.js.
+ * sap-ui-core.js, sap-ui-core-nojQuery.js and sap-ui-debug.js. The
+ * assembled bundles are cached until one of their members is modified.
+ * <p>
+ * Additional bundles can be declared with filter init parameters: the name
+ * of the parameter is the path of the bundle (e.g.
+ * <code>/resources/my/app/bundle.js</code>) and the value is the comma
+ * separated list of its members. The init parameter <code>bundles</code>
+ * references JSON descriptors (comma separated paths in the web context or
+ * the classpath) which map the paths of the bundles either to the list of
+ * members or to an object with the properties <code>members</code> and
+ * <code>footer</code>. The members are concatenated in the declared order
+ * and may use the wildcards <code>*</code>, <code>**</code> and
+ * <code>?</code> (the matching resources are concatenated in alphabetical
+ * order). Declared bundles take precedence over the built-in bundles.
+ * <p>
+ * With the init parameter <code>streaming</code> set to <code>true</code> the
+ * bundles are not kept in memory: the members are piped byte by byte into the
+ * response and the <code>Content-Length</code> is calculated from the sizes
+ * of the members (if known).
  * <p>
  * <i>This class must not be used in productive systems.</i>
  *
@@ -31,13 +75,37 @@ import org.apache.commons.io.IOUtils;
 public class ConcatFilter implements Filter {
 
 
-  /** default prefix for the classpath */
-  private static final String CLASSPATH_PREFIX = "META-INF";
+  /** init parameter for the JSON descriptors of the bundles (comma separated paths) */
+  private static final String INIT_PARAM_BUNDLES = "bundles";
+
+  /** init parameter to stream the bundles instead of caching them (true/false) */
+  private static final String INIT_PARAM_STREAMING = "streaming";
+
+  /** time to live of the expanded wildcard members (in millis) */
+  private static final long WILDCARD_TTL = 5000;
+
+  /** the code to boot the core (appended to the core bundles) */
+  private static final String BOOT_CODE = "sap.ui.requireSync(\"sap/ui/core/Core\"); sap.ui.getCore().boot && sap.ui.getCore().boot();";
 
 
   /** filter configuration */
   private FilterConfig config;
 
+  /** index of the classpath resources */
+  private ResourceIndex index;
+
+  /** content encoding support (incl. cache for compressed variants) */
+  private ContentEncoding contentEncoding;
+
+  /** cache for the assembled bundles (bundle path --> bundle) */
+  private Map<String, Bundle> bundles = new ConcurrentHashMap<String, Bundle>();
+
+  /** the declared bundles (bundle path --> bundle definition) */
+  private Map<String, BundleDefinition> definitions = new HashMap<String, BundleDefinition>();
+
+  /** true, if the bundles are streamed instead of being cached */
+  private boolean streaming;
+
 
   /* (non-Javadoc)
    * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
@@ -48,14 +116,120 @@ public class ConcatFilter implements Filter {
     // keep the filter configuration
     this.config = filterConfig;
 
+    // index the classpath resources
+    this.index = ResourceIndex.getInstance(filterConfig.getServletContext());
+
+    // the content encoding support
+    this.contentEncoding = ContentEncoding.getInstance(filterConfig.getServletContext());
+
+    // stream or cache the bundles
+    this.streaming = Boolean.parseBoolean(filterConfig.getInitParameter(INIT_PARAM_STREAMING));
+
+    // read the declared bundles (descriptors first, init parameters override them)
+    try {
+      String descriptors = filterConfig.getInitParameter(INIT_PARAM_BUNDLES);
+      if (descriptors != null) {
+        for (String descriptor : descriptors.split(",")) {
+          if (descriptor.trim().length() > 0) {
+            this.readDescriptor(descriptor.trim());
+          }
+        }
+      }
+      for (Enumeration<?> e = filterConfig.getInitParameterNames(); e.hasMoreElements();) {
+        String name = (String) e.nextElement();
+        if (name.startsWith("/")) {
+          this.definitions.put(name, new BundleDefinition(splitMembers(filterConfig.getInitParameter(name)), null));
+        }
+      }
+    } catch (IOException ex) {
+      throw new ServletException("Failed to read the bundle definitions!", ex);
+    }
+    if (!this.definitions.isEmpty()) {
+      this.log("Declared bundles: " + this.definitions.keySet());
+    }
+
   } // method: init
 
 
+  /**
+   * reads the bundle definitions of the JSON descriptor
+   * @param path path of the descriptor (in the web context or the classpath)
+   * @throws IOException
+   */
+  private void readDescriptor(String path) throws IOException {
+
+    // lookup the descriptor in the web context path and the classpath
+    String normalizedPath = path.startsWith("/") ? path : "/" + path;
+    URL url = this.config.getServletContext().getResource(normalizedPath);
+    if (url == null) {
+      url = Thread.currentThread().getContextClassLoader().getResource(normalizedPath.substring(1));
+    }
+    if (url == null) {
+      throw new FileNotFoundException("Bundle descriptor not found: " + path);
+    }
+
+    // parse the descriptor
+    JsonElement json;
+    InputStream is = url.openStream();
+    try {
+      json = new JsonParser().parse(new InputStreamReader(is, "UTF-8"));
+    } catch (JsonParseException ex) {
+      throw new IOException("Invalid bundle descriptor: " + path, ex);
+    } finally {
+      IOUtils.closeQuietly(is);
+    }
+    if (!json.isJsonObject()) {
+      throw new IOException("Invalid bundle descriptor (object expected): " + path);
+    }
+
+    // the bundle path maps either to the list of members or to an object (members + footer)
+    for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+      JsonElement value = entry.getValue();
+      JsonElement members = value;
+      String footer = null;
+      if (value.isJsonObject()) {
+        members = value.getAsJsonObject().get("members");
+        JsonElement footerValue = value.getAsJsonObject().get("footer");
+        footer = footerValue != null && !footerValue.isJsonNull() ? footerValue.getAsString() : null;
+      }
+      List<String> memberList = new ArrayList<String>();
+      if (members != null && members.isJsonArray()) {
+        for (JsonElement member : members.getAsJsonArray()) {
+          memberList.add(member.getAsString());
+        }
+      } else if (members != null && members.isJsonPrimitive()) {
+        memberList.addAll(splitMembers(members.getAsString()));
+      } else {
+        throw new IOException("Invalid bundle descriptor (no members for " + entry.getKey() + "): " + path);
+      }
+      this.definitions.put(entry.getKey(), new BundleDefinition(memberList, footer));
+    }
+
+  } // method: readDescriptor
+
+
+  /**
+   * splits the comma separated list of members
+   * @param members comma separated list of members
+   * @return the list of members
+   */
+  private static List<String> splitMembers(String members) {
+    List<String> memberList = new ArrayList<String>();
+    for (String member : members.split(",")) {
+      if (member.trim().length() > 0) {
+        memberList.add(member.trim());
+      }
+    }
+    return memberList;
+  } // method: splitMembers
+
+
   /* (non-Javadoc)
    * @see javax.servlet.Filter#destroy()
    */
   @Override
   public void destroy() {
+    this.bundles.clear();
     this.config = null;
   } // method: destroy
 
@@ -78,105 +252,428 @@ public class ConcatFilter implements Filter {
       // only process GET or HEAD requests
       if (method.matches("GET|HEAD")) {
 
-        // check for sap-ui-core.js
-        if ("/resources/sap-ui-core.js".equals(path)) {
+        // check for a bundle
+        BundleDefinition definition = this.getBundleDefinition(path);
+        if (definition != null) {
 
-          this.log("Merging module: sap-ui-core.js");
+          // stream the members of the bundle
+          if (this.streaming) {
+            this.streamBundle(path, definition, httpRequest, httpResponse, "GET".equals(method));
+            return;
+          }
+
+          Bundle bundle = this.getBundle(path, definition);
+          String contentType = this.config.getServletContext().getMimeType(path);
 
-          response.setContentType(this.config.getServletContext().getMimeType(path));
-          httpResponse.addDateHeader("Last-Modified", System.currentTimeMillis());
+          response.setContentType(contentType);
+          httpResponse.addDateHeader("Last-Modified", bundle.lastModified);
+          httpResponse.setHeader("ETag", bundle.etag);
+
+          // check the conditional request headers (ETag / last modified)
+          if (ConditionalRequests.isNotModified(httpRequest, bundle.etag, bundle.lastModified)) {
+            httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+          }
+
+          // compress the content if accepted by the client
+          byte[] content = this.contentEncoding.encode(httpRequest, httpResponse, contentType, bundle.content, path + bundle.etag);
+          if (content != bundle.content) {
+            httpResponse.setHeader("ETag", ContentEncoding.toWeakETag(bundle.etag));
+          }
+          response.setContentLength(content.length);
 
           if ("GET".equals(method)) {
             OutputStream os = response.getOutputStream();
-            if (this.findResource("/resources/ui5loader.js") != null) {
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/baseuri.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/es6-promise.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/es6-shim-nopromise.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/ui5loader.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/ui5loader-autoconfig.js"), os, "UTF-8");
-            } else {
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/jquery.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/jqueryui/jquery-ui-position.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/Device.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/baseuri.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/URI.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/es6-promise.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/es6-shim-nopromise.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/jquery.sap.global.js"), os, "UTF-8");
-            }
-            IOUtils.write("sap.ui.requireSync(\"sap/ui/core/Core\"); sap.ui.getCore().boot && sap.ui.getCore().boot();", os, "UTF-8");
-            IOUtils.closeQuietly(os);
-
+            os.write(content);
             os.flush();
             os.close();
           }
 
           return;
 
-        } else if ("/resources/sap-ui-core-nojQuery.js".equals(path)) {
+        }
 
-          this.log("Merging module: sap-ui-core-nojQuery.js");
+      }
 
-          response.setContentType(this.config.getServletContext().getMimeType(path));
-          httpResponse.addDateHeader("Last-Modified", System.currentTimeMillis());
+    }
 
-          if ("GET".equals(method)) {
-            OutputStream os = response.getOutputStream();
-            if (this.findResource("/resources/ui5loader.js") != null) {
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/baseuri.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/es6-promise.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/es6-shim-nopromise.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/ui5loader.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/ui5loader-autoconfig.js"), os, "UTF-8");
-            } else {
-              IOUtils.write(this.loadResource("/resources/sap/ui/Device.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/baseuri.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/URI.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/es6-promise.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/sap/ui/thirdparty/es6-shim-nopromise.js"), os, "UTF-8");
-              IOUtils.write(this.loadResource("/resources/jquery.sap.global.js"), os, "UTF-8");
-            }
-            IOUtils.write("sap.ui.requireSync(\"sap/ui/core/Core\"); sap.ui.getCore().boot && sap.ui.getCore().boot();", os, "UTF-8");
-            IOUtils.closeQuietly(os);
+    // proceed in the filter chain
+    chain.doFilter(request, response);
 
-            os.flush();
-            os.close();
-          }
+  } // method: doFilter
 
-          return;
 
-        } else if ("/resources/sap-ui-debug.js".equals(path)) {
+  /**
+   * returns the definition of the bundle for the given path
+   * @param path path of the request
+   * @return the bundle definition or null if the path is not a bundle
+   * @throws MalformedURLException
+   */
+  private BundleDefinition getBundleDefinition(String path) throws MalformedURLException {
 
-          this.log("Merging module: sap-ui-debug.js");
+    // declared bundles take precedence over the built-in bundles
+    BundleDefinition definition = this.definitions.get(path);
+    if (definition != null) {
+      return definition;
+    }
 
-          response.setContentType(this.config.getServletContext().getMimeType(path));
-          httpResponse.addDateHeader("Last-Modified", System.currentTimeMillis());
+    // check for sap-ui-core.js and sap-ui-core-nojQuery.js
+    boolean nojQuery = "/resources/sap-ui-core-nojQuery.js".equals(path);
+    if ("/resources/sap-ui-core.js".equals(path) || nojQuery) {
+
+      List<String> members = new ArrayList<String>();
+      if (this.findResource("/resources/ui5loader.js") != null) {
+        members.add("/resources/sap/ui/thirdparty/baseuri.js");
+        members.add("/resources/sap/ui/thirdparty/es6-promise.js");
+        members.add("/resources/sap/ui/thirdparty/es6-shim-nopromise.js");
+        members.add("/resources/ui5loader.js");
+        members.add("/resources/ui5loader-autoconfig.js");
+      } else {
+        if (!nojQuery) {
+          members.add("/resources/sap/ui/thirdparty/jquery.js");
+          members.add("/resources/sap/ui/thirdparty/jqueryui/jquery-ui-position.js");
+        }
+        members.add("/resources/sap/ui/Device.js");
+        members.add("/resources/sap/ui/thirdparty/baseuri.js");
+        members.add("/resources/sap/ui/thirdparty/URI.js");
+        members.add("/resources/sap/ui/thirdparty/es6-promise.js");
+        members.add("/resources/sap/ui/thirdparty/es6-shim-nopromise.js");
+        members.add("/resources/jquery.sap.global.js");
+      }
+      return new BundleDefinition(members, BOOT_CODE);
 
-          if ("GET".equals(method)) {
-            OutputStream os = response.getOutputStream();
-            IOUtils.write(this.loadResource("/resources/sap/ui/debug/ControlTree.js"), os, "UTF-8");
-            IOUtils.write(this.loadResource("/resources/sap/ui/debug/Highlighter.js"), os, "UTF-8");
-            IOUtils.write(this.loadResource("/resources/sap/ui/debug/LogViewer.js"), os, "UTF-8");
-            IOUtils.write(this.loadResource("/resources/sap/ui/debug/PropertyList.js"), os, "UTF-8");
-            IOUtils.write(this.loadResource("/resources/sap/ui/debug/DebugEnv.js"), os, "UTF-8");
-            IOUtils.closeQuietly(os);
+    } else if ("/resources/sap-ui-debug.js".equals(path)) {
 
-            os.flush();
-            os.close();
+      List<String> members = new ArrayList<String>();
+      members.add("/resources/sap/ui/debug/ControlTree.js");
+      members.add("/resources/sap/ui/debug/Highlighter.js");
+      members.add("/resources/sap/ui/debug/LogViewer.js");
+      members.add("/resources/sap/ui/debug/PropertyList.js");
+      members.add("/resources/sap/ui/debug/DebugEnv.js");
+      return new BundleDefinition(members, null);
+
+    }
+
+    return null;
+
+  } // method: getBundleDefinition
+
+
+  /**
+   * returns the bundle for the given path. The bundle is only assembled if
+   * it is not cached yet or if one of its members has been modified.
+   * @param path path of the bundle
+   * @param definition definition of the bundle
+   * @return the bundle
+   * @throws IOException
+   */
+  private Bundle getBundle(String path, BundleDefinition definition) throws IOException {
+
+    // resolve the members of the bundle
+    List<String> members = this.getMembers(definition);
+    int size = members.size();
+    URL[] urls = new URL[size];
+    long[] timestamps = new long[size];
+    for (int i = 0; i < size; i++) {
+      urls[i] = this.findResource(members.get(i));
+      timestamps[i] = urls[i] != null ? getLastModified(urls[i]) : -1;
+    }
+
+    // check the cached bundle to be up-to-date
+    Bundle bundle = this.bundles.get(path);
+    if (bundle != null && bundle.isUpToDate(urls, timestamps)) {
+      return bundle;
+    }
+
+    this.log("Merging module: " + path.substring(path.lastIndexOf('/') + 1));
+
+    // assemble the bundle (the bytes are copied as is)
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    long lastModified = -1;
+    for (int i = 0; i < size; i++) {
+      if (urls[i] != null) {
+        InputStream is = urls[i].openStream();
+        try {
+          BufferPool.copy(is, baos);
+        } finally {
+          IOUtils.closeQuietly(is);
+        }
+        lastModified = Math.max(lastModified, timestamps[i]);
+      }
+    }
+    if (definition.footer != null) {
+      baos.write(definition.footer.getBytes("UTF-8"));
+    }
+    byte[] content = baos.toByteArray();
+
+    // calculate the ETag from the content
+    String etag;
+    try {
+      etag = "\"" + ConditionalRequests.toHex(MessageDigest.getInstance("MD5").digest(content)) + "\"";
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IOException("Failed to calculate the content hash for " + path, ex);
+    }
+
+    // cache the bundle
+    bundle = new Bundle(urls, timestamps, content, lastModified > 0 ? lastModified : System.currentTimeMillis(), etag);
+    this.bundles.put(path, bundle);
+    return bundle;
+
+  } // method: getBundle
+
+
+  /**
+   * streams the bundle into the response: the members are piped byte by byte
+   * from their <code>URLConnection</code> into the response by using a pooled
+   * buffer. The headers are determined upfront from the timestamps and sizes
+   * of the members (the ETag is weak as it is not based on the content).
+   * @param path path of the bundle
+   * @param definition definition of the bundle
+   * @param request the request
+   * @param response the response
+   * @param body true, if the content should be written (GET)
+   * @throws IOException
+   */
+  private void streamBundle(String path, BundleDefinition definition, HttpServletRequest request, HttpServletResponse response, boolean body) throws IOException {
+
+    // resolve the members and determine their timestamps and sizes
+    List<String> members = this.getMembers(definition);
+    List<URL> urls = new ArrayList<URL>(members.size());
+    byte[] footer = definition.footer != null ? definition.footer.getBytes("UTF-8") : new byte[0];
+    long contentLength = footer.length;
+    long lastModified = -1;
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IOException("Failed to calculate the ETag for " + path, ex);
+    }
+    for (String member : members) {
+      URL url = this.findResource(member);
+      if (url != null) {
+        long timestamp = getLastModified(url);
+        long length = getContentLength(url);
+        urls.add(url);
+        lastModified = Math.max(lastModified, timestamp);
+        contentLength = length != -1 && contentLength != -1 ? contentLength + length : -1;
+        digest.update((url + "@" + timestamp + ":" + length + "\n").getBytes("UTF-8"));
+      }
+    }
+    digest.update(footer);
+    String etag = "W/\"" + ConditionalRequests.toHex(digest.digest()) + "\"";
+
+    // set the headers before writing the first byte
+    String contentType = this.config.getServletContext().getMimeType(path);
+    response.setContentType(contentType);
+    if (lastModified > 0) {
+      response.addDateHeader("Last-Modified", lastModified);
+    }
+    response.setHeader("ETag", etag);
+
+    // check the conditional request headers (ETag / last modified)
+    if (ConditionalRequests.isNotModified(request, etag, lastModified)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    // compress on the fly if accepted by the client (the length is unknown then)
+    boolean gzip = false;
+    if (ContentEncoding.isCompressible(contentType)) {
+      response.setHeader("Vary", "Accept-Encoding");
+      gzip = (contentLength == -1 || contentLength >= ContentEncoding.MIN_LENGTH) && ContentEncoding.accepts(request, "gzip");
+    }
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
+    } else if (contentLength != -1 && contentLength <= Integer.MAX_VALUE) {
+      response.setContentLength((int) contentLength);
+    }
+
+    // pipe the members into the response
+    if (body) {
+      OutputStream os = response.getOutputStream();
+      if (gzip) {
+        os = new GZIPOutputStream(os, BufferPool.BUFFER_SIZE);
+      }
+      for (URL url : urls) {
+        InputStream is = url.openStream();
+        try {
+          BufferPool.copy(is, os);
+        } finally {
+          IOUtils.closeQuietly(is);
+        }
+      }
+      os.write(footer);
+      if (gzip) {
+        ((GZIPOutputStream) os).finish();
+      }
+      os.flush();
+    }
+
+  } // method: streamBundle
+
+
+  /**
+   * returns the members of the bundle with expanded wildcards (the expanded
+   * members are kept for a short time to avoid listing the resources for
+   * each request)
+   * @param definition definition of the bundle
+   * @return the paths of the members
+   */
+  private List<String> getMembers(BundleDefinition definition) {
+    if (!definition.hasWildcards) {
+      return definition.members;
+    }
+    synchronized (definition) {
+      long now = System.currentTimeMillis();
+      if (definition.expandedMembers == null || now > definition.expires) {
+        Set<String> members = new LinkedHashSet<String>();
+        for (String member : definition.members) {
+          if (isWildcard(member)) {
+            members.addAll(this.listResources(member));
+          } else {
+            members.add(member);
           }
+        }
+        definition.expandedMembers = new ArrayList<String>(members);
+        definition.expires = now + WILDCARD_TTL;
+      }
+      return definition.expandedMembers;
+    }
+  } // method: getMembers
 
-          return;
 
+  /**
+   * checks whether the path of the member contains wildcards
+   * @param member path of the member
+   * @return true, if the path contains wildcards
+   */
+  private static boolean isWildcard(String member) {
+    return member.indexOf('*') != -1 || member.indexOf('?') != -1;
+  } // method: isWildcard
+
+
+  /**
+   * lists the resources of the web context path and the classpath matching
+   * the given pattern (<code>**</code> matches any number of folders,
+   * <code>*</code> and <code>?</code> match within a folder)
+   * @param pattern the pattern
+   * @return the paths of the matching resources (sorted alphabetically)
+   */
+  private Set<String> listResources(String pattern) {
+
+    // the folder to list is the part of the pattern before the first wildcard
+    int wildcard = Math.min(pattern.indexOf('*') != -1 ? pattern.indexOf('*') : pattern.length(), pattern.indexOf('?') != -1 ? pattern.indexOf('?') : pattern.length());
+    String folder = pattern.substring(0, pattern.lastIndexOf('/', wildcard) + 1);
+
+    // convert the pattern into a regular expression
+    StringBuilder regex = new StringBuilder();
+    for (int i = 0, l = pattern.length(); i < l; i++) {
+      char c = pattern.charAt(i);
+      if (c == '*' && i + 1 < l && pattern.charAt(i + 1) == '*') {
+        if (i + 2 < l && pattern.charAt(i + 2) == '/') {
+          regex.append("(?:.*/)?");
+          i += 2;
+        } else {
+          regex.append(".*");
+          i++;
         }
+      } else if (c == '*') {
+        regex.append("[^/]*");
+      } else if (c == '?') {
+        regex.append("[^/]");
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    Pattern regexPattern = Pattern.compile(regex.toString());
+
+    // collect the matching resources of the web context path and the classpath
+    Set<String> resources = new TreeSet<String>();
+    this.listContextResources(folder, resources);
+    resources.addAll(this.index.listResources(folder));
+    for (Iterator<String> it = resources.iterator(); it.hasNext();) {
+      if (!regexPattern.matcher(it.next()).matches()) {
+        it.remove();
+      }
+    }
+    return resources;
+
+  } // method: listResources
 
+
+  /**
+   * lists the resources of the web context path (incl. subfolders)
+   * @param folder path of the folder (with trailing slash)
+   * @param resources set of found resource paths
+   */
+  private void listContextResources(String folder, Set<String> resources) {
+    Set<?> paths = this.config.getServletContext().getResourcePaths(folder);
+    if (paths != null) {
+      for (Object path : paths) {
+        String resource = (String) path;
+        if (resource.endsWith("/")) {
+          this.listContextResources(resource, resources);
+        } else {
+          resources.add(resource);
+        }
       }
+    }
+  } // method: listContextResources
+
 
+  /**
+   * determines the last modified timestamp of the resource (for JAR entries
+   * the timestamp of the entry is used)
+   * @param url URL of the resource
+   * @return last modified timestamp or -1
+   * @throws IOException
+   */
+  private static long getLastModified(URL url) throws IOException {
+    URLConnection conn = url.openConnection();
+    if (conn instanceof JarURLConnection) {
+      JarEntry entry = ((JarURLConnection) conn).getJarEntry();
+      return entry != null ? entry.getTime() : -1;
+    } else if ("file".equals(url.getProtocol())) {
+      try {
+        return new File(url.toURI()).lastModified();
+      } catch (URISyntaxException ex) {
+        throw new MalformedURLException(ex.getMessage()); // NOSONAR
+      }
+    } else {
+      InputStream is = null;
+      try {
+        conn.connect();
+        is = conn.getInputStream();
+        return conn.getLastModified();
+      } finally {
+        IOUtils.closeQuietly(is);
+      }
     }
+  } // method: getLastModified
 
-    // proceed in the filter chain
-    chain.doFilter(request, response);
 
-  } // method: doFilter
+  /**
+   * determines the size of the resource without reading it (for JAR entries
+   * the size of the entry is used)
+   * @param url URL of the resource
+   * @return size of the resource or -1 if unknown
+   * @throws IOException
+   */
+  private static long getContentLength(URL url) throws IOException {
+    if ("jar".equals(url.getProtocol())) {
+      URLConnection conn = url.openConnection();
+      JarEntry entry = conn instanceof JarURLConnection ? ((JarURLConnection) conn).getJarEntry() : null;
+      return entry != null ? entry.getSize() : -1;
+    } else if ("file".equals(url.getProtocol())) {
+      try {
+        return new File(url.toURI()).length();
+      } catch (URISyntaxException ex) {
+        throw new MalformedURLException(ex.getMessage()); // NOSONAR
+      }
+    } else {
+      return -1;
+    }
+  } // method: getContentLength
 
 
   /**
@@ -225,24 +722,101 @@ public class ConcatFilter implements Filter {
     // normalize the path (JarURLConnection cannot resolve non-normalized paths)
     String normalizedPath = URI.create(path).normalize().toString();
 
-    // define the classpath for the classloader lookup
-    String classPath = CLASSPATH_PREFIX + normalizedPath;
-
     // first lookup the resource in the web context path
     URL url = this.config.getServletContext().getResource(normalizedPath);
 
-    // lookup the resource in the current threads classloaders
-    if (url == null) {
-      url = Thread.currentThread().getContextClassLoader().getResource(classPath);
-    }
-
-    // lookup the resource in the local classloader
+    // lookup the resource in the classpath (current threads and local classloader)
     if (url == null) {
-      url = ResourceServlet.class.getClassLoader().getResource(classPath);
+      url = this.index.findResource(normalizedPath);
     }
 
     return url;
 
   } // method: findResource
 
+  /**
+   * The class <code>BundleDefinition</code> defines the members of a bundle.
+   */
+  static class BundleDefinition {
+
+    /** paths of the members */
+    final List<String> members;
+
+    /** content appended after the members or null */
+    final String footer;
+
+    /** true, if one of the members contains wildcards */
+    final boolean hasWildcards;
+
+    /** the members with expanded wildcards (guarded by the definition) */
+    List<String> expandedMembers;
+
+    /** expiration timestamp of the expanded members */
+    long expires;
+
+    BundleDefinition(List<String> members, String footer) {
+      this.members = members;
+      this.footer = footer;
+      boolean hasWildcards = false;
+      for (String member : members) {
+        hasWildcards |= isWildcard(member);
+      }
+      this.hasWildcards = hasWildcards;
+    } // constructor
+
+  } // inner class: BundleDefinition
+
+
+  /**
+   * The class <code>Bundle</code> keeps the assembled content of a bundle
+   * together with the information to validate it.
+   */
+  static class Bundle {
+
+    /** URLs of the members */
+    final URL[] urls;
+
+    /** last modified timestamps of the members */
+    final long[] timestamps;
+
+    /** the assembled content */
+    final byte[] content;
+
+    /** last modified timestamp (of the newest member) */
+    final long lastModified;
+
+    /** the ETag */
+    final String etag;
+
+    Bundle(URL[] urls, long[] timestamps, byte[] content, long lastModified, String etag) {
+      this.urls = urls;
+      this.timestamps = timestamps;
+      this.content = content;
+      this.lastModified = lastModified;
+      this.etag = etag;
+    } // constructor
+
+    /**
+     * checks whether the bundle is up-to-date for the given members
+     * @param urls URLs of the members
+     * @param timestamps last modified timestamps of the members
+     * @return true, if the bundle is up-to-date
+     */
+    boolean isUpToDate(URL[] urls, long[] timestamps) {
+      if (urls.length != this.urls.length) {
+        return false;
+      }
+      for (int i = 0; i < urls.length; i++) {
+        String url = urls[i] != null ? urls[i].toString() : null;
+        String bundleUrl = this.urls[i] != null ? this.urls[i].toString() : null;
+        if ((url == null ? bundleUrl != null : !url.equals(bundleUrl)) || timestamps[i] != this.timestamps[i]) {
+          return false;
+        }
+      }
+      return true;
+    } // method: isUpToDate
+
+  } // inner class: Bundle
+
+
 } // class: ConcatFilter
\ No newline at end of file
@@ -0,0 +1,137 @@
+package com.sap.openui5;
+
+import javax.servlet.http.HttpServletRequest;
+
+
+/**
+ * The class <code>ConditionalRequests</code> provides the helpers to evaluate
+ * the conditional request headers <code>If-None-Match</code>,
+ * <code>If-Modified-Since</code> and <code>If-Range</code> against the
+ * <code>ETag</code> and the <code>Last-Modified</code> timestamp of a resource.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+final class ConditionalRequests {
+
+
+  /**
+   * no instances
+   */
+  private ConditionalRequests() {
+  } // constructor
+
+
+  /**
+   * checks whether the resource has not been modified according to the
+   * conditional request headers so that a <code>304 Not Modified</code>
+   * can be returned (<code>If-None-Match</code> takes precedence over
+   * <code>If-Modified-Since</code>)
+   * @param request the request
+   * @param etag the ETag of the resource or null
+   * @param lastModified last modified timestamp of the resource or -1
+   * @return true, if the resource has not been modified
+   */
+  static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      return etag != null && matches(ifNoneMatch, etag, true);
+    }
+    long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+    return ifModifiedSince != -1 && lastModified > 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+  } // method: isNotModified
+
+
+  /**
+   * checks whether the <code>Range</code> header should be applied according
+   * to the <code>If-Range</code> header (the ETag is compared strongly and the
+   * timestamp has to match exactly)
+   * @param request the request
+   * @param etag the ETag of the resource or null
+   * @param lastModified last modified timestamp of the resource or -1
+   * @return true, if the range can be applied
+   */
+  static boolean isRangeApplicable(HttpServletRequest request, String etag, long lastModified) {
+    String ifRange = request.getHeader("If-Range");
+    if (ifRange == null) {
+      return true;
+    }
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return etag != null && matches(ifRange, etag, false);
+    }
+    long date = getDateHeader(request, "If-Range");
+    return date != -1 && lastModified > 0 && lastModified / 1000 == date / 1000;
+  } // method: isRangeApplicable
+
+
+  /**
+   * checks whether one of the entity tags of the header value matches the
+   * given ETag
+   * @param headerValue value of the header (list of entity tags or "*")
+   * @param etag the ETag of the resource
+   * @param weak true, if the weak comparison should be used
+   * @return true, if one of the entity tags matches
+   */
+  static boolean matches(String headerValue, String etag, boolean weak) {
+    if ("*".equals(headerValue.trim())) {
+      return true;
+    }
+    if (weak) {
+      etag = stripWeakIndicator(etag);
+    } else if (etag.startsWith("W/")) {
+      return false;
+    }
+    for (String tag : headerValue.split(",")) {
+      tag = tag.trim();
+      if (weak) {
+        tag = stripWeakIndicator(tag);
+      }
+      if (tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  } // method: matches
+
+
+  /**
+   * removes the weak indicator of the entity tag
+   * @param etag the entity tag
+   * @return the entity tag without weak indicator
+   */
+  private static String stripWeakIndicator(String etag) {
+    return etag.startsWith("W/") ? etag.substring(2) : etag;
+  } // method: stripWeakIndicator
+
+
+  /**
+   * returns the value of the date header or -1 if the header is missing
+   * or cannot be parsed
+   * @param request the request
+   * @param name name of the header
+   * @return value of the date header or -1
+   */
+  static long getDateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException ex) {
+      return -1;
+    }
+  } // method: getDateHeader
+
+
+  /**
+   * converts the bytes into a hex string
+   * @param bytes the bytes
+   * @return the hex string
+   */
+  static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  } // method: toHex
+
+
+} // class: ConditionalRequests
@@ -0,0 +1,250 @@
+package com.sap.openui5;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+
+/**
+ * The class <code>ContentEncoding</code> is used to negotiate the content
+ * encoding with the client (<code>Accept-Encoding</code>) and to compress
+ * the content with gzip. The compressed variants are kept in a cache which
+ * is bounded by the size of the compressed content in bytes.
+ * <p>
+ * The instance is shared via the <code>ServletContext</code>. The size of the
+ * cache can be configured with the context init parameter
+ * <code>com.sap.openui5.ContentEncoding.CACHE_SIZE</code> (in bytes).
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+final class ContentEncoding {
+
+
+  /** context init parameter for the max. size of the cache for compressed variants (in bytes, 0 disables the cache) */
+  private static final String INIT_PARAM_CACHE_SIZE = ContentEncoding.class.getName() + ".CACHE_SIZE";
+
+  /** default max. size of the cache for compressed variants (in bytes) */
+  private static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+
+  /** min. length of the content to be compressed (smaller content is not worth it) */
+  static final int MIN_LENGTH = 1024;
+
+  /** content types which are compressed (besides text/*) */
+  private static final List<String> COMPRESSIBLE_CONTENT_TYPES = Arrays.asList(new String[] {
+    "application/javascript", "application/x-javascript", "application/json", "application/xml", "image/svg+xml", "application/wasm"
+  });
+
+
+  /** cache for the compressed variants (key --> compressed content) */
+  private final LRUCache<String, byte[]> cache;
+
+
+  /**
+   * returns the instance of the <code>ContentEncoding</code> from the <code>ServletContext</code>
+   * and creates it initially
+   * @param context the <code>ServletContext</code>
+   * @return the <code>ContentEncoding</code>
+   */
+  static ContentEncoding getInstance(ServletContext context) {
+    synchronized (ContentEncoding.class) {
+      ContentEncoding encoding = (ContentEncoding) context.getAttribute(ContentEncoding.class.getName());
+      if (encoding == null) {
+        String cacheSize = context.getInitParameter(INIT_PARAM_CACHE_SIZE);
+        encoding = new ContentEncoding(cacheSize != null ? Long.parseLong(cacheSize) : DEFAULT_CACHE_SIZE);
+        context.setAttribute(ContentEncoding.class.getName(), encoding);
+      }
+      return encoding;
+    }
+  } // method: getInstance
+
+
+  /**
+   * constructs the class <code>ContentEncoding</code>
+   * @param cacheSize max. size of the cache for compressed variants (in bytes)
+   */
+  private ContentEncoding(long cacheSize) {
+    this.cache = cacheSize > 0 ? new LRUCache<String, byte[]>(cacheSize, new LRUCache.Weigher<byte[]>() {
+      @Override
+      public long weigh(byte[] value) {
+        return value.length;
+      }
+    }) : null;
+  } // constructor
+
+
+  /**
+   * checks whether content of the given content type should be compressed
+   * @param contentType the content type (incl. optional parameters)
+   * @return true, if the content should be compressed
+   */
+  static boolean isCompressible(String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    int index = contentType.indexOf(';');
+    String mimeType = (index != -1 ? contentType.substring(0, index) : contentType).trim().toLowerCase();
+    return mimeType.startsWith("text/") || COMPRESSIBLE_CONTENT_TYPES.contains(mimeType);
+  } // method: isCompressible
+
+
+  /**
+   * checks whether the client accepts the given content encoding
+   * (according to the <code>Accept-Encoding</code> header incl. quality values)
+   * @param request the request
+   * @param encoding the content encoding (e.g. gzip or br)
+   * @return true, if the client accepts the content encoding
+   */
+  static boolean accepts(HttpServletRequest request, String encoding) {
+    String header = request.getHeader("Accept-Encoding");
+    if (header == null) {
+      return false;
+    }
+    boolean wildcard = false;
+    for (String token : header.split(",")) {
+      String[] parts = token.split(";");
+      String name = parts[0].trim().toLowerCase();
+      float quality = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim();
+        if (param.startsWith("q=")) {
+          try {
+            quality = Float.parseFloat(param.substring(2));
+          } catch (NumberFormatException ex) {
+            quality = 0;
+          }
+        }
+      }
+      if (name.equals(encoding) || ("gzip".equals(encoding) && "x-gzip".equals(name))) {
+        return quality > 0;
+      } else if ("*".equals(name)) {
+        wildcard = quality > 0;
+      }
+    }
+    return wildcard;
+  } // method: accepts
+
+
+  /**
+   * converts the ETag into a weak ETag (used for compressed variants which
+   * are semantically equivalent to the uncompressed content)
+   * @param etag the ETag or null
+   * @return the weak ETag or null
+   */
+  static String toWeakETag(String etag) {
+    return etag != null && !etag.startsWith("W/") ? "W/" + etag : etag;
+  } // method: toWeakETag
+
+
+  /**
+   * encodes the content for the response: if the content type is compressible
+   * and the client accepts gzip the compressed content is returned and the
+   * <code>Content-Encoding</code> header is set. The compressed variant is
+   * cached by the hash of the content.
+   * @param request the request
+   * @param response the response
+   * @param contentType the content type
+   * @param content the content
+   * @return the content to write into the response
+   * @throws IOException
+   */
+  byte[] encode(HttpServletRequest request, HttpServletResponse response, String contentType, byte[] content) throws IOException {
+    return this.encode(request, response, contentType, content, null);
+  } // method: encode
+
+
+  /**
+   * encodes the content for the response: if the content type is compressible
+   * and the client accepts gzip the compressed content is returned and the
+   * <code>Content-Encoding</code> header is set. The compressed variant is
+   * cached by the given key or the hash of the content if no key is given.
+   * @param request the request
+   * @param response the response
+   * @param contentType the content type
+   * @param content the content
+   * @param key key which identifies the content (incl. its version) or null
+   * @return the content to write into the response
+   * @throws IOException
+   */
+  byte[] encode(HttpServletRequest request, HttpServletResponse response, String contentType, byte[] content, String key) throws IOException {
+    if (isCompressible(contentType)) {
+      response.setHeader("Vary", "Accept-Encoding");
+      if (content.length >= MIN_LENGTH && accepts(request, "gzip")) {
+        response.setHeader("Content-Encoding", "gzip");
+        return this.gzip(content, key);
+      }
+    }
+    return content;
+  } // method: encode
+
+
+  /**
+   * compresses the content with gzip (the compressed variant is cached by
+   * the given key or the hash of the content if no key is given)
+   * @param content the content
+   * @param key key which identifies the content (incl. its version) or null
+   * @return the compressed content
+   * @throws IOException
+   */
+  byte[] gzip(byte[] content, String key) throws IOException {
+    if (this.cache != null) {
+      if (key == null) {
+        try {
+          key = "#" + ConditionalRequests.toHex(MessageDigest.getInstance("MD5").digest(content)) + ":" + content.length;
+        } catch (NoSuchAlgorithmException ex) {
+          throw new IOException("Failed to calculate the content hash!", ex);
+        }
+      }
+      byte[] compressed = this.cache.get(key);
+      if (compressed != null) {
+        return compressed;
+      }
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(32, content.length / 4));
+    GZIPOutputStream gzos = new GZIPOutputStream(baos, BufferPool.BUFFER_SIZE);
+    gzos.write(content);
+    gzos.close();
+    byte[] compressed = baos.toByteArray();
+    if (this.cache != null) {
+      this.cache.put(key, compressed);
+    }
+    return compressed;
+  } // method: gzip
+
+
+  /**
+   * compresses the content of the stream with gzip (the compressed variant is
+   * cached by the given key and last modified timestamp so that the stream is
+   * only read if the compressed variant is not cached yet)
+   * @param key the key of the content (e.g. the URL of the resource)
+   * @param lastModified last modified timestamp of the content
+   * @param is the input stream of the content
+   * @return the compressed content
+   * @throws IOException
+   */
+  byte[] gzip(String key, long lastModified, InputStream is) throws IOException {
+    key = key + "@" + lastModified;
+    byte[] compressed = this.cache != null && lastModified > 0 ? this.cache.get(key) : null;
+    if (compressed == null) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      GZIPOutputStream gzos = new GZIPOutputStream(baos, BufferPool.BUFFER_SIZE);
+      BufferPool.copy(is, gzos);
+      gzos.close();
+      compressed = baos.toByteArray();
+      if (this.cache != null && lastModified > 0) {
+        this.cache.put(key, compressed);
+      }
+    }
+    return compressed;
+  } // method: gzip
+
+
+} // class: ContentEncoding
@@ -2,16 +2,20 @@ package com.sap.openui5;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
@@ -28,6 +32,11 @@ import javax.servlet.ServletContextListener;
  * what kind of web application pages, test pages or libararies are part of the
  * current web application.
  * <p>
+ * The web context and each root of the classpath (JAR or folder) are scanned
+ * in parallel on a fork-join pool and the found resources are merged into
+ * concurrent sorted sets. Each JAR is enumerated only once for the resources
+ * and the test-resources.
+ * <p>
  * <i>This class must not be used in productive systems.</i>
  *
  * @author Peter Muessig
@@ -42,15 +51,21 @@ public final class DiscoveryService implements ServletContextListener {
   /** default prefix for the classpath */
   private static final String CLASSPATH_PREFIX = "META-INF";
 
-  /** regex to find the resources to include in the resources list (contains a placeholder for the path prefix) */
-  private static final String REGEX_JAR_INCLUDE = "(?:" + CLASSPATH_PREFIX + "({0}([^/]+/?)))";
+  /** path of the resources in the classpath */
+  private static final String RESOURCES_PATH = "/resources/";
+
+  /** path of the test-resources in the classpath */
+  private static final String TEST_RESOURCES_PATH = "/test-resources/";
 
-  /** regex to exclude dedicated resources from the WAR (META-INF, WEB-INF and OSGI-INF) */
-  private static final String REGEX_WAR_EXCLUDE = "/(?:META|WEB|OSGI)-INF/";
 
   /** regex to identify the test pages (with a placeholder for the libraries) */
   private static final String REGEX_TESTPAGES = "(/({0})/(([A-Z0-9._%+-]+/)*([A-Z_0-9-\\.]+)\\.html))";
 
+  /** pattern to exclude dedicated resources from the WAR (META-INF, WEB-INF and OSGI-INF) */
+  private static final Pattern PATTERN_WAR_EXCLUDE = Pattern.compile(
+    "/(?:META|WEB|OSGI)-INF/",
+    Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
   /** pattern to identify the application pages */
   private static final Pattern PATTERN_APP_PAGES = Pattern.compile(
     ".+\\.html",
@@ -63,20 +78,20 @@ public final class DiscoveryService implements ServletContextListener {
 
 
   /** list of application resources */
-  private Set<String> appResources = new TreeSet<String>();
+  private Set<String> appResources = new ConcurrentSkipListSet<String>();
 
   /** list of resources */
-  private Set<String> resources = new TreeSet<String>();
+  private Set<String> resources = new ConcurrentSkipListSet<String>();
 
   /** list of test-resources */
-  private Set<String> testResources = new TreeSet<String>();
+  private Set<String> testResources = new ConcurrentSkipListSet<String>();
 
 
   /** reference to the <code>ServletContext</code> */
   private ServletContext context;
 
   /** flag, whether the service has been initialized or not */
-  private boolean initialized = false;
+  private volatile boolean initialized = false;
 
   /**
    * returns the instance of the <code>DiscoveryService</code> from the <code>ServletContext</code>
@@ -92,23 +107,46 @@ public final class DiscoveryService implements ServletContextListener {
    * initializes the <code>DiscoveryService</code> and performs a resource lookup
    * to create a map of app, runtime and test resources for resource determination
    */
-  private synchronized void initialize() {
-    if (!this.initialized) {
-      long millis = System.currentTimeMillis();
-
-      // lookup for the resources in the context path
-      this.listContextResources("/", this.appResources);
-
-      // lookup for the resources in the classpath
-      try {
-        this.listClasspathResources("/resources/", this.resources);
-        this.listClasspathResources("/test-resources/", this.testResources);
-      } catch (IOException ex) {
-        throw new RuntimeException("Scan for classpath resources failed!", ex);
-      }
+  private void initialize() {
+    if (this.initialized) {
+      return;
+    }
+    synchronized (this) {
+      if (!this.initialized) {
+        long millis = System.currentTimeMillis();
+
+        // lookup for the resources in the context path and the classpath
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        tasks.add(new ContextScan("/", this.appResources));
+        Map<String, JarFile> jars = new LinkedHashMap<String, JarFile>();
+        try {
+          this.listClasspathRoots(RESOURCES_PATH, this.resources, jars, tasks);
+          this.listClasspathRoots(TEST_RESOURCES_PATH, this.testResources, jars, tasks);
+        } catch (IOException ex) {
+          throw new RuntimeException("Scan for classpath resources failed!", ex);
+        }
 
-      this.log("Resource lookup took: " + (System.currentTimeMillis() - millis) + "ms");
-      this.initialized = true;
+        // each JAR is scanned once for the resources and the test-resources
+        for (JarFile jar : jars.values()) {
+          tasks.add(new JarScan(jar, this.resources, this.testResources));
+        }
+
+        // scan the roots in parallel (exceptions are rethrown when joining)
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+          for (RecursiveAction task : tasks) {
+            pool.execute(task);
+          }
+          for (RecursiveAction task : tasks) {
+            task.join();
+          }
+        } finally {
+          pool.shutdown();
+        }
+
+        this.log("Resource lookup took: " + (System.currentTimeMillis() - millis) + "ms");
+        this.initialized = true;
+      }
     }
   } // method: initialize
 
@@ -170,6 +208,23 @@ public final class DiscoveryService implements ServletContextListener {
   } // method: getAllLibraries
 
 
+  /**
+   * returns the list of available runtime resources (of the classpath and
+   * the web context path)
+   * @return the list of available runtime resources
+   */
+  public List<String> getResources() {
+    this.initialize();
+    List<String> resources = new ArrayList<String>(this.resources);
+    for (String resource : this.appResources) {
+      if (resource.startsWith("/resources/")) {
+        resources.add(resource);
+      }
+    }
+    return resources;
+  } // method: getResources
+
+
   /**
    * returns the list of available application pages
    * @return the list of available application pages
@@ -239,114 +294,178 @@ public final class DiscoveryService implements ServletContextListener {
 
 
   /**
-   * lists the resourcs in the web context (part of the WAR file)
-   * @param path path to lookup
-   * @param resources set of found resources
-   */
-  @SuppressWarnings("unchecked")
-  private void listContextResources(String path, Set<String> resources) {
-    Set<String> resourcePaths = this.context.getResourcePaths(path);
-    Pattern p = Pattern.compile(REGEX_WAR_EXCLUDE, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-    for (String resourcePath : resourcePaths) {
-      Matcher m = p.matcher(resourcePath);
-      if (!m.matches()) {
-        if (resourcePath.endsWith("/")) {
-          this.listContextResources(resourcePath, resources);
-        } else {
-          resources.add(resourcePath);
-        }
-      }
-    }
-  } // method: listContextResources
-
-
-  /**
-   * lists the resources in the classpath (part of the JAR files)
+   * determines the roots of the classpath (JARs and folders) containing the
+   * given path: the JARs are collected and a task is created to scan each folder
    * @param path path to lookup
    * @param resources set of found resources
+   * @param jars map of found JARs (name --> JAR file)
+   * @param tasks list of scan tasks
    * @throws IOException
    */
-  private void listClasspathResources(String path, Set<String> resources) throws IOException {
+  private void listClasspathRoots(String path, Set<String> resources, Map<String, JarFile> jars, List<RecursiveAction> tasks) throws IOException {
 
     // define the resource path to lookup
     String resourcePath = CLASSPATH_PREFIX + path;
-    Pattern p = Pattern.compile(MessageFormat.format(REGEX_JAR_INCLUDE, path), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
     Enumeration<URL> urls = Thread.currentThread().getContextClassLoader().getResources(resourcePath);
-    Set<String> dirs = new TreeSet<String>();
 
     while (urls.hasMoreElements()) {
       URL url = urls.nextElement();
       URLConnection connection = url.openConnection();
       if (connection instanceof JarURLConnection) {
-        // for JAR files we scan the content and check it by using a regex
-        JarURLConnection jarConnection = (JarURLConnection) connection;
-        JarFile jar = jarConnection.getJarFile();
-        Enumeration<JarEntry> entries = jar.entries();
-        while (entries.hasMoreElements()) {
-          JarEntry entry = entries.nextElement();
-          Matcher m = p.matcher(entry.toString());
-          if (m.matches()) {
-            if (entry.isDirectory()) {
-              dirs.add(m.group(2));
-            } else {
-              resources.add(m.group(1));
-            }
-          }
+        // JAR files are scanned once for all paths
+        JarFile jar = ((JarURLConnection) connection).getJarFile();
+        jars.put(jar.getName(), jar);
+      } else if ("file".equals(url.getProtocol())) {
+        // for folders we scan the file system
+        try {
+          tasks.add(new FolderScan(new File(url.toURI()), path, resources));
+        } catch (URISyntaxException ex) {
+          this.log("listClasspathRoots: cannot list resources for URL: \"" + url + "\"!");
         }
       } else {
-        // unlikely the FileURLConnection is not providing a public API
-        // therefore we need to do some dirty tricks for the file listing
-        connection.connect();
-        Object fieldFile = this.getDeclaredFieldValue(connection, "file");
-        if (fieldFile instanceof File) {
-          File file = (File) fieldFile;
-          if (file != null && file.exists()) {
-            if (file.isDirectory()) {
-              File[] files = file.listFiles();
-              for (File f : files) {
-                if (f.isDirectory()) {
-                  dirs.add(f.getName() + "/");
-                } else {
-                  resources.add(path + f.getName());
-                }
-              }
-            }
+        this.log("listClasspathRoots: cannot list resources for path: \"" + path + "\"!");
+      }
+    }
+
+  } // method: listClasspathRoots
+
+
+  /**
+   * The class <code>ContextScan</code> lists the resources in the web context
+   * (part of the WAR file) and scans the nested paths in parallel.
+   */
+  private class ContextScan extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** path to lookup */
+    private final String path;
+
+    /** set of found resources */
+    private final Set<String> resources;
+
+    ContextScan(String path, Set<String> resources) {
+      this.path = path;
+      this.resources = resources;
+    } // constructor
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.RecursiveAction#compute()
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void compute() {
+      Set<String> resourcePaths = DiscoveryService.this.context.getResourcePaths(this.path);
+      if (resourcePaths == null) {
+        return;
+      }
+      List<ContextScan> nested = new ArrayList<ContextScan>();
+      for (String resourcePath : resourcePaths) {
+        Matcher m = PATTERN_WAR_EXCLUDE.matcher(resourcePath);
+        if (!m.matches()) {
+          if (resourcePath.endsWith("/")) {
+            nested.add(new ContextScan(resourcePath, this.resources));
+          } else {
+            this.resources.add(resourcePath);
           }
-        } else {
-          this.log("listClasspathResources: cannot list resources for path: \"" + path + "\"!");
         }
       }
-    }
+      invokeAll(nested);
+    } // method: compute
 
-    // find the resources of the nested paths
-    for (String dir : dirs) {
-      this.listClasspathResources(path + dir, resources);
-    }
+  } // class: ContextScan
+
+
+  /**
+   * The class <code>FolderScan</code> lists the resources in a folder of the
+   * classpath and scans the nested folders in parallel.
+   */
+  private static class FolderScan extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the folder */
+    private final File folder;
+
+    /** path of the folder */
+    private final String path;
 
-  } // method: listClasspathResources
+    /** set of found resources */
+    private final Set<String> resources;
+
+    FolderScan(File folder, String path, Set<String> resources) {
+      this.folder = folder;
+      this.path = path;
+      this.resources = resources;
+    } // constructor
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.RecursiveAction#compute()
+     */
+    @Override
+    protected void compute() {
+      File[] files = this.folder.listFiles();
+      if (files == null) {
+        return;
+      }
+      List<FolderScan> nested = new ArrayList<FolderScan>();
+      for (File file : files) {
+        if (file.isDirectory()) {
+          nested.add(new FolderScan(file, this.path + file.getName() + "/", this.resources));
+        } else {
+          this.resources.add(this.path + file.getName());
+        }
+      }
+      invokeAll(nested);
+    } // method: compute
+
+  } // class: FolderScan
 
 
   /**
-   * helper to access the value of declared fields which are normally not
-   * accessible via public getter or setter functions
-   * @param object object instance
-   * @param fieldName name of the field to access
-   * @return value of the field
+   * The class <code>JarScan</code> lists the resources and test-resources of
+   * a JAR file of the classpath by enumerating its entries once.
    */
-  private Object getDeclaredFieldValue(Object object, String fieldName) {
-    try {
-      Field field = object.getClass().getDeclaredField(fieldName);
-      boolean isAccessible = field.isAccessible();
-      if (!isAccessible) {
-        field.setAccessible(true);
+  private static class JarScan extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the JAR file */
+    private final JarFile jar;
+
+    /** set of found resources */
+    private final Set<String> resources;
+
+    /** set of found test-resources */
+    private final Set<String> testResources;
+
+    JarScan(JarFile jar, Set<String> resources, Set<String> testResources) {
+      this.jar = jar;
+      this.resources = resources;
+      this.testResources = testResources;
+    } // constructor
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.RecursiveAction#compute()
+     */
+    @Override
+    protected void compute() {
+      int offset = CLASSPATH_PREFIX.length();
+      Enumeration<JarEntry> entries = this.jar.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (!entry.isDirectory() && name.startsWith(CLASSPATH_PREFIX)) {
+          if (name.startsWith(RESOURCES_PATH, offset)) {
+            this.resources.add(name.substring(offset));
+          } else if (name.startsWith(TEST_RESOURCES_PATH, offset)) {
+            this.testResources.add(name.substring(offset));
+          }
+        }
       }
-      Object value = field.get(object);
-      field.setAccessible(isAccessible);
-      return value;
-    } catch (Exception ex) {
-      return null;
-    }
-  } // method: getDeclaredFieldValue
+    } // method: compute
+
+  } // class: JarScan
 
 
   /**
@@ -0,0 +1,132 @@
+package com.sap.openui5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The class <code>FileWatcher</code> watches the directories of files with a
+ * <code>WatchService</code> and notifies the <code>Listener</code> about
+ * changed, created or deleted files. The events are processed by a daemon
+ * thread. If events got lost (overflow) the directory itself is reported.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+final class FileWatcher implements Runnable {
+
+
+  /** the watch service */
+  private final WatchService watchService;
+
+  /** the listener to notify */
+  private final Listener listener;
+
+  /** the watched directories (directory --> watch key) */
+  private final Map<File, WatchKey> directories = new ConcurrentHashMap<File, WatchKey>();
+
+  /** the thread processing the events */
+  private final Thread thread;
+
+
+  /**
+   * constructs the class <code>FileWatcher</code> and starts the thread
+   * processing the events
+   * @param name name of the thread
+   * @param listener the listener to notify
+   * @throws IOException
+   */
+  FileWatcher(String name, Listener listener) throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.listener = listener;
+    this.thread = new Thread(this, name);
+    this.thread.setDaemon(true);
+    this.thread.start();
+  } // constructor
+
+
+  /**
+   * watches the directory of the given file
+   * @param file the file
+   * @throws IOException
+   */
+  void watch(File file) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (directory != null && !this.directories.containsKey(directory)) {
+      synchronized (this.directories) {
+        if (!this.directories.containsKey(directory)) {
+          WatchKey key = directory.toPath().register(this.watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+          this.directories.put(directory, key);
+        }
+      }
+    }
+  } // method: watch
+
+
+  /**
+   * stops watching the directories and terminates the thread
+   */
+  void close() {
+    try {
+      this.watchService.close();
+    } catch (IOException ex) {
+      // nothing to do
+    }
+    this.directories.clear();
+  } // method: close
+
+
+  /* (non-Javadoc)
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        WatchKey key = this.watchService.take();
+        File directory = ((Path) key.watchable()).toFile();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            this.listener.changed(directory);
+          } else {
+            this.listener.changed(new File(directory, ((Path) event.context()).toString()));
+          }
+        }
+        if (!key.reset()) {
+          this.directories.remove(directory);
+          this.listener.changed(directory);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException ex) {
+      // the watcher has been closed
+    }
+  } // method: run
+
+
+  /**
+   * The interface <code>Listener</code> is notified about changed files.
+   */
+  interface Listener {
+
+    /**
+     * notifies about the changed file (or the directory if the changes
+     * of the files in the directory are unknown)
+     * @param file the changed file or directory
+     */
+    void changed(File file);
+
+  } // inner interface: Listener
+
+
+} // class: FileWatcher
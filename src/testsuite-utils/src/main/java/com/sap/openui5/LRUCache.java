@@ -0,0 +1,151 @@
+package com.sap.openui5;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * The class <code>LRUCache</code> is a simple bounded cache which evicts
+ * the least recently used entries once the max. weight is exceeded. By
+ * default each entry has the weight 1 so that the max. weight is the max.
+ * number of entries. A <code>Weigher</code> can be used to bound the cache
+ * e.g. by the size of the values in bytes. All operations are synchronized
+ * so that the cache can be shared between concurrent requests.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+final class LRUCache<K, V> {
+
+
+  /** max. weight of all entries */
+  private final long maxWeight;
+
+  /** weigher to determine the weight of the entries or null (weight 1) */
+  private final Weigher<V> weigher;
+
+  /** the entries in access order (eldest first) */
+  private final Map<K, V> entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+
+  /** current weight of all entries */
+  private long weight;
+
+
+  /**
+   * constructs the class <code>LRUCache</code>
+   * @param maxSize max. number of entries
+   */
+  LRUCache(int maxSize) {
+    this(maxSize, null);
+  } // constructor
+
+
+  /**
+   * constructs the class <code>LRUCache</code>
+   * @param maxWeight max. weight of all entries
+   * @param weigher weigher to determine the weight of the entries
+   */
+  LRUCache(long maxWeight, Weigher<V> weigher) {
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+  } // constructor
+
+
+  /**
+   * returns the weight of the value
+   * @param value the value
+   * @return the weight
+   */
+  private long weigh(V value) {
+    return this.weigher != null ? this.weigher.weigh(value) : 1;
+  } // method: weigh
+
+
+  /**
+   * returns the cached value for the given key
+   * @param key the key
+   * @return the cached value or <code>null</code>
+   */
+  synchronized V get(K key) {
+    return this.entries.get(key);
+  } // method: get
+
+
+  /**
+   * caches the value for the given key (values exceeding the max. weight
+   * on their own are not cached at all)
+   * @param key the key
+   * @param value the value
+   */
+  synchronized void put(K key, V value) {
+    long valueWeight = this.weigh(value);
+    if (valueWeight > this.maxWeight) {
+      this.remove(key);
+      return;
+    }
+    V oldValue = this.entries.put(key, value);
+    if (oldValue != null) {
+      this.weight -= this.weigh(oldValue);
+    }
+    this.weight += valueWeight;
+    Iterator<V> it = this.entries.values().iterator();
+    while (this.weight > this.maxWeight && it.hasNext()) {
+      this.weight -= this.weigh(it.next());
+      it.remove();
+    }
+  } // method: put
+
+
+  /**
+   * removes the cached value for the given key
+   * @param key the key
+   * @return the removed value or <code>null</code>
+   */
+  synchronized V remove(K key) {
+    V value = this.entries.remove(key);
+    if (value != null) {
+      this.weight -= this.weigh(value);
+    }
+    return value;
+  } // method: remove
+
+
+  /**
+   * removes all cached values
+   */
+  synchronized void clear() {
+    this.entries.clear();
+    this.weight = 0;
+  } // method: clear
+
+
+  /**
+   * returns the number of cached values
+   * @return number of cached values
+   */
+  synchronized int size() {
+    return this.entries.size();
+  } // method: size
+
+
+  /**
+   * The interface <code>Weigher</code> determines the weight of a value.
+   *
+   * @param <V> type of the values
+   */
+  interface Weigher<V> {
+
+    /**
+     * returns the weight of the value
+     * @param value the value
+     * @return the weight
+     */
+    long weigh(V value);
+
+  } // inner interface: Weigher
+
+
+} // class: LRUCache
@@ -0,0 +1,188 @@
+package com.sap.openui5;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+
+/**
+ * The class <code>LessCache</code> persists the compiled themes of the
+ * <code>LessFilter</code> (CSS, RTL-CSS, theme parameters and the list of
+ * imported resources) in a directory so that they survive restarts of the
+ * server. Each theme is stored as JSON file named by the hash of the theme
+ * path and the compiler options. The entry contains the hash of the source
+ * set (paths and timestamps of all Less files) to validate it.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+final class LessCache {
+
+
+  /** extension of the cache files */
+  private static final String FILE_EXTENSION = ".json";
+
+
+  /** the cache directory */
+  private final File directory;
+
+  /** JSON serializer for the entries */
+  private final Gson gson = new Gson();
+
+
+  /**
+   * constructs the class <code>LessCache</code>
+   * @param directory the cache directory (created on demand)
+   */
+  LessCache(File directory) {
+    this.directory = directory;
+  } // constructor
+
+
+  /**
+   * returns the cache directory
+   * @return the cache directory
+   */
+  File getDirectory() {
+    return this.directory;
+  } // method: getDirectory
+
+
+  /**
+   * reads the entry for the given key
+   * @param key the key (theme path and compiler options)
+   * @return the entry or null if not cached or not readable
+   */
+  Entry read(String key) {
+    File file = this.getFile(key);
+    if (!file.isFile()) {
+      return null;
+    }
+    InputStream is = null;
+    try {
+      is = new FileInputStream(file);
+      return this.gson.fromJson(new InputStreamReader(is, "UTF-8"), Entry.class);
+    } catch (IOException ex) {
+      return null;
+    } catch (JsonParseException ex) {
+      return null;
+    } finally {
+      IOUtils.closeQuietly(is);
+    }
+  } // method: read
+
+
+  /**
+   * writes the entry for the given key (the file is written to a temporary
+   * file first and renamed afterwards so that readers never see partial entries)
+   * @param key the key (theme path and compiler options)
+   * @param entry the entry
+   * @throws IOException
+   */
+  void write(String key, Entry entry) throws IOException {
+    if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+      throw new IOException("Failed to create the cache directory " + this.directory);
+    }
+    File file = this.getFile(key);
+    File tempFile = File.createTempFile("less", ".tmp", this.directory);
+    OutputStream os = new FileOutputStream(tempFile);
+    try {
+      Writer writer = new OutputStreamWriter(os, "UTF-8");
+      this.gson.toJson(entry, writer);
+      writer.flush();
+    } finally {
+      IOUtils.closeQuietly(os);
+    }
+    if (!tempFile.renameTo(file)) {
+      file.delete();
+      if (!tempFile.renameTo(file)) {
+        tempFile.delete();
+        throw new IOException("Failed to write the cache file " + file);
+      }
+    }
+  } // method: write
+
+
+  /**
+   * removes the entry for the given key
+   * @param key the key (theme path and compiler options)
+   */
+  void remove(String key) {
+    this.getFile(key).delete();
+  } // method: remove
+
+
+  /**
+   * returns the cache file for the given key
+   * @param key the key
+   * @return the cache file
+   */
+  private File getFile(String key) {
+    return new File(this.directory, hash(key) + FILE_EXTENSION);
+  } // method: getFile
+
+
+  /**
+   * calculates the hash of the given value
+   * @param value the value
+   * @return the hash as hex string
+   */
+  static String hash(String value) {
+    try {
+      return ConditionalRequests.toHex(MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8")));
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("MD5 is not supported!", ex);
+    } catch (IOException ex) {
+      throw new IllegalStateException("UTF-8 is not supported!", ex);
+    }
+  } // method: hash
+
+
+  /**
+   * The class <code>Entry</code> is the persisted form of a compiled theme.
+   */
+  static class Entry {
+
+    /** hash of the source set (paths and timestamps of the Less files) */
+    String sourceHash;
+
+    /** max last modified timestamp of the Less files */
+    long lastModified;
+
+    /** the imported resources (semicolon separated) */
+    String resources;
+
+    /** the CSS */
+    String css;
+
+    /** the RTL-CSS */
+    String cssRtl;
+
+    /** the theme parameters as JSON */
+    String json;
+
+    Entry(String sourceHash, long lastModified, String resources, String css, String cssRtl, String json) {
+      this.sourceHash = sourceHash;
+      this.lastModified = lastModified;
+      this.resources = resources;
+      this.css = css;
+      this.cssRtl = cssRtl;
+      this.json = json;
+    } // constructor
+
+  } // inner class: Entry
+
+
+} // class: LessCache
@@ -0,0 +1,79 @@
+package com.sap.openui5;
+
+import java.io.IOException;
+
+
+/**
+ * The interface <code>LessCompiler</code> is the backend of the
+ * <code>LessFilter</code> to compile the CSS, RTL-CSS and theme parameters
+ * with less.js in a JavaScript engine. The implementations must support
+ * concurrent compilations.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+interface LessCompiler {
+
+
+  /** base path for the less JS sources */
+  String LESS_PATH = "META-INF/less/";
+
+  /** array of scripts for the less instance */
+  String[] LESS_JS = {
+    "less-env.js", "less.js", "less-rtl-plugin.js", "less-api.js"
+  };
+
+
+  /**
+   * returns the name of the compiler (JavaScript engine)
+   * @return the name of the compiler
+   */
+  String getName();
+
+
+  /**
+   * compiles the CSS, RTL-CSS and theme parameters as JSON
+   * @param input less input
+   * @param path source path
+   * @param compressCSS true, if CSS should be compressed
+   * @param compressJSON true if JSON should be compressed
+   * @param libraryName name of the library
+   * @return the result of the compilation
+   * @throws IOException
+   */
+  Result compile(String input, String path, boolean compressCSS, boolean compressJSON, String libraryName) throws IOException;
+
+
+  /**
+   * releases the resources of the compiler
+   */
+  void destroy();
+
+
+  /**
+   * The class <code>Result</code> keeps the result of a compilation.
+   */
+  static class Result {
+
+    /** the CSS */
+    final String css;
+
+    /** the RTL-CSS */
+    final String cssRtl;
+
+    /** the theme parameters as JSON */
+    final String json;
+
+    /** the imported resources (semicolon separated) */
+    final String resources;
+
+    Result(String css, String cssRtl, String json, String resources) {
+      this.css = css;
+      this.cssRtl = cssRtl;
+      this.json = json;
+      this.resources = resources;
+    } // constructor
+
+  } // inner class: Result
+
+
+} // interface: LessCompiler
@@ -0,0 +1,232 @@
+package com.sap.openui5;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+
+
+/**
+ * The class <code>LessCompilerBenchmark</code> compares the compile times of
+ * the Less compilers (JavaScript engines) per library theme to choose the
+ * engine for a deployment. The themes are looked up in the classpath:
+ * <pre>
+ * java -cp ... com.sap.openui5.LessCompilerBenchmark [-engines rhino,nashorn,graal.js] [-iterations 3] [library.source.less paths...]
+ * </pre>
+ * Without paths all <code>library.source.less</code> files of the classpath
+ * are compiled. Per engine and theme the cold compile time is measured with
+ * a fresh compiler (no cached imports) and the warm compile time with a
+ * compiler which is kept for all themes (the first of its compilations per
+ * theme is a warm-up and not measured).
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+public final class LessCompilerBenchmark {
+
+
+  /** pattern to identify the Less sources of the themes */
+  private static final Pattern PATTERN_THEME_SOURCE = Pattern.compile("(/resources/(.*)/themes/)([^/]*)/library\\.source\\.less");
+
+
+  /**
+   * no instances
+   */
+  private LessCompilerBenchmark() {
+  } // constructor
+
+
+  /**
+   * runs the benchmark
+   * @param args the arguments
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+
+    // parse the arguments
+    List<String> engines = new ArrayList<String>(Arrays.asList(RhinoLessCompiler.NAME));
+    int iterations = 3;
+    List<String> sourcePaths = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      if ("-engines".equals(args[i]) && i + 1 < args.length) {
+        engines = Arrays.asList(args[++i].split(","));
+      } else if ("-iterations".equals(args[i]) && i + 1 < args.length) {
+        iterations = Math.max(1, Integer.parseInt(args[++i]));
+      } else {
+        sourcePaths.add(args[i]);
+      }
+    }
+
+    // lookup the themes in the classpath
+    ResourceIndex index = new ResourceIndex(Thread.currentThread().getContextClassLoader(), LessCompilerBenchmark.class.getClassLoader());
+    if (sourcePaths.isEmpty()) {
+      for (String resource : index.listResources("/resources/")) {
+        if (PATTERN_THEME_SOURCE.matcher(resource).matches()) {
+          sourcePaths.add(resource);
+        }
+      }
+    }
+    ClasspathResourceLoader loader = new ClasspathResourceLoader(index);
+
+    // compile the themes with each engine
+    List<String> columns = new ArrayList<String>();
+    List<LessCompiler> compilers = new ArrayList<LessCompiler>();
+    for (String engine : engines) {
+      columns.add(engine + " cold");
+      columns.add(engine + " warm");
+      compilers.add(createCompiler(engine, loader));
+    }
+    System.out.println("theme\t" + join(columns, "\t"));
+    for (String sourcePath : sourcePaths) {
+      Matcher m = PATTERN_THEME_SOURCE.matcher(sourcePath);
+      String input = loader.load(sourcePath);
+      if (!m.matches() || input == null) {
+        System.err.println("The less source file cannot be found: " + sourcePath);
+        continue;
+      }
+      String path = m.group(1) + m.group(3) + "/";
+      String libraryName = m.group(2).replace('/', '.');
+      StringBuilder line = new StringBuilder(path);
+      for (int c = 0; c < compilers.size(); c++) {
+        LessCompiler compiler = compilers.get(c);
+        if (compiler == null) {
+          line.append("\tn/a\tn/a");
+          continue;
+        }
+        try {
+          // cold: a fresh compiler has to load and parse all imports
+          LessCompiler coldCompiler = createCompiler(engines.get(c), loader);
+          try {
+            long nanos = System.nanoTime();
+            coldCompiler.compile(input, path, false, false, libraryName);
+            line.append('\t').append((System.nanoTime() - nanos) / 1000000).append("ms");
+          } finally {
+            coldCompiler.destroy();
+          }
+          // warm: the compiler reuses the imports of the previous compilations
+          compiler.compile(input, path, false, false, libraryName);
+          long nanos = System.nanoTime();
+          for (int i = 0; i < iterations; i++) {
+            compiler.compile(input, path, false, false, libraryName);
+          }
+          line.append('\t').append((System.nanoTime() - nanos) / iterations / 1000000).append("ms");
+        } catch (Exception ex) {
+          line.append("\terror");
+          System.err.println("Failed to compile " + sourcePath + " with " + compiler.getName() + ": " + ex.getMessage());
+        }
+      }
+      System.out.println(line);
+    }
+    for (LessCompiler compiler : compilers) {
+      if (compiler != null) {
+        compiler.destroy();
+      }
+    }
+
+  } // method: main
+
+
+  /**
+   * creates the compiler for the given engine
+   * @param engine name of the engine
+   * @param loader the resource loader
+   * @return the compiler or null if the engine is not available
+   */
+  private static LessCompiler createCompiler(String engine, Object loader) {
+    PooledLessCompiler<?> compiler = RhinoLessCompiler.NAME.equals(engine) ? new RhinoLessCompiler(1, loader) : new ScriptEngineLessCompiler(engine, 1, loader);
+    try {
+      compiler.init();
+      return compiler;
+    } catch (Exception ex) {
+      System.err.println("The engine " + engine + " is not available: " + ex.getMessage());
+      return null;
+    }
+  } // method: createCompiler
+
+
+  /**
+   * joins the values with the separator
+   * @param values the values
+   * @param separator the separator
+   * @return the joined values
+   */
+  private static String join(List<String> values, String separator) {
+    StringBuilder joined = new StringBuilder();
+    for (String value : values) {
+      if (joined.length() > 0) {
+        joined.append(separator);
+      }
+      joined.append(value);
+    }
+    return joined.toString();
+  } // method: join
+
+
+  /**
+   * The <code>ClasspathResourceLoader</code> is used to load the resources
+   * requested by less.js out of the classpath.
+   */
+  public static class ClasspathResourceLoader {
+
+    /** index of the classpath resources */
+    private final ResourceIndex index;
+
+    ClasspathResourceLoader(ResourceIndex index) {
+      this.index = index;
+    } // constructor
+
+    /**
+     * loads a resource for the specified path
+     * @param path path of the resource
+     */
+    public String load(String path) throws IOException {
+      String content = null;
+      URL resource = this.index.findResource(URI.create(path).normalize().toString());
+      if (resource != null) {
+        InputStream is = resource.openStream();
+        try {
+          content = IOUtils.toString(is, "UTF-8");
+        } finally {
+          IOUtils.closeQuietly(is);
+        }
+      }
+      return content;
+    } // method: load
+
+    /**
+     * determines the last modified timestamp of the resource for the specified
+     * path (used by less.js to validate the cached imports) - like the
+     * <code>LessFilter</code> the timestamp of the JAR file is used for JAR entries
+     * @param path path of the resource
+     * @return last modified timestamp or -1 if the resource doesn't exist
+     */
+    public long lastModified(String path) throws IOException {
+      URL resource = this.index.findResource(URI.create(path).normalize().toString());
+      if (resource == null) {
+        return -1;
+      }
+      URLConnection conn = resource.openConnection();
+      if (conn instanceof JarURLConnection) {
+        return new File(((JarURLConnection) conn).getJarFile().getName()).lastModified();
+      }
+      InputStream is = conn.getInputStream();
+      try {
+        return conn.getLastModified();
+      } finally {
+        IOUtils.closeQuietly(is);
+      }
+    } // method: lastModified
+
+  } // inner class: ClasspathResourceLoader
+
+
+} // class: LessCompilerBenchmark
@@ -3,16 +3,35 @@ package com.sap.openui5;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.Reader;
 import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.HashMap;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,17 +46,57 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
-import org.mozilla.javascript.Context;
-import org.mozilla.javascript.Function;
-import org.mozilla.javascript.Scriptable;
-import org.mozilla.javascript.ScriptableObject;
-import org.mozilla.javascript.tools.shell.Global;
+
+import com.google.gson.GsonBuilder;
 
 
 /**
  * The class <code>LessFilter</code> is used to compile CSS for Less files
  * on the fly - once they are requested by the application.
  * <p>
+ * The Less compiler is kept in a pool of independent scopes so that
+ * different themes can be compiled in parallel. The size of the pool can be
+ * configured with the init parameter
+ * <code>com.sap.openui5.LessFilter.POOL_SIZE</code> (defaults to the number
+ * of available processors). Concurrent requests for the same theme wait for
+ * the one compilation in progress. The JavaScript engine is Rhino by default,
+ * with <code>com.sap.openui5.LessFilter.ENGINE</code> a JSR-223 script engine
+ * can be used instead (e.g. <code>nashorn</code> or <code>graal.js</code>,
+ * Rhino remains the fallback if the engine is not available).
+ * <p>
+ * The compiled themes are persisted in the directory configured with the
+ * init parameter <code>com.sap.openui5.LessFilter.CACHE_DIR</code> (defaults
+ * to the temporary directory of the web application, an empty value disables
+ * it) and are reloaded lazily after a restart as long as the Less sources and
+ * the compiler options did not change.
+ * <p>
+ * With the init parameter <code>com.sap.openui5.LessFilter.WARMUP</code> set
+ * to <code>true</code> all themes found by the <code>DiscoveryService</code>
+ * are compiled in the background after the initialization (the number of
+ * threads can be configured with <code>com.sap.openui5.LessFilter.WARMUP_THREADS</code>).
+ * Requested themes which are not compiled yet are taken out of the queue and
+ * compiled immediately. The progress is available as JSON via
+ * <code>/resources/sap-ui-less-warmup.json</code>.
+ * <p>
+ * Compiled themes whose sources are files are invalidated by a
+ * <code>WatchService</code> (sources in JAR files are immutable) so that
+ * serving a compiled theme doesn't require any I/O. Themes with other sources
+ * are validated by the timestamps of their sources for each request. The
+ * watcher can be disabled with <code>com.sap.openui5.LessFilter.WATCH</code>
+ * set to <code>false</code>.
+ * <p>
+ * The compiled themes are published as immutable objects so that serving
+ * them never blocks. The number of compiled themes kept in memory can be
+ * configured with <code>com.sap.openui5.LessFilter.CACHE_SIZE</code> (the
+ * least recently served themes are evicted).
+ * <p>
+ * The Less sources imported by the compilations are cached by the
+ * <code>ResourceLoader</code> so that the shared base files are read only
+ * once. Watched sources are valid until the watcher reports a change, other
+ * sources are revalidated by their timestamps after a short time. The max. size of the cached sources
+ * can be configured with <code>com.sap.openui5.LessFilter.RESOURCE_CACHE_SIZE</code>
+ * (in bytes, 0 disables the cache).
+ * <p>
  * <i>This class must not be used in productive systems.</i>
  *
  * @author Peter Muessig, Matthias Osswald
@@ -45,9 +104,6 @@ import org.mozilla.javascript.tools.shell.Global;
 public class LessFilter implements Filter {
 
 
-  /** default prefix for the classpath */
-  private static final String CLASSPATH_PREFIX = "META-INF";
-
   /** pattern to identify a theme request */
   private static final Pattern PATTERN_THEME_REQUEST = Pattern.compile("(.*)/(library\\.css|library-RTL\\.css|library-parameters\\.json)$");
 
@@ -55,30 +111,115 @@ public class LessFilter implements Filter {
   private static final Pattern PATTERN_THEME_REQUEST_PARTS = Pattern.compile("(/resources/(.*)/themes/)([^/]*)/.*");
 
 
-  /** base path for the less JS sources*/
-  private static final String LESS_PATH = CLASSPATH_PREFIX + "/less/";
+  /** init parameter for the JavaScript engine (rhino or the name of a JSR-223 script engine) */
+  private static final String INIT_PARAM_ENGINE = LessFilter.class.getName() + ".ENGINE";
+
+  /** init parameter for the max. number of compiler scopes (parallel compilations) */
+  private static final String INIT_PARAM_POOL_SIZE = LessFilter.class.getName() + ".POOL_SIZE";
+
+  /** init parameter for the max. number of compiled themes kept in memory */
+  private static final String INIT_PARAM_CACHE_SIZE = LessFilter.class.getName() + ".CACHE_SIZE";
+
+  /** default max. number of compiled themes kept in memory */
+  private static final int DEFAULT_CACHE_SIZE = 256;
+
+  /** init parameter for the max. size of the cached Less sources (in bytes, 0 disables the cache) */
+  private static final String INIT_PARAM_RESOURCE_CACHE_SIZE = LessFilter.class.getName() + ".RESOURCE_CACHE_SIZE";
+
+  /** default max. size of the cached Less sources (in bytes) */
+  private static final long DEFAULT_RESOURCE_CACHE_SIZE = 16 * 1024 * 1024;
+
+  /** time to live of the cached Less sources which are not watched and of the lookups of missing sources (in ms) */
+  private static final long RESOURCE_TTL = 5000;
+
+  /** init parameter for the directory to persist the compiled themes (empty value disables it) */
+  private static final String INIT_PARAM_CACHE_DIR = LessFilter.class.getName() + ".CACHE_DIR";
+
+  /** name of the cache directory in the temporary directory of the web application */
+  private static final String DEFAULT_CACHE_DIR_NAME = "less-cache";
+
+  /** init parameter to compile all themes in the background after the initialization (true/false) */
+  private static final String INIT_PARAM_WARMUP = LessFilter.class.getName() + ".WARMUP";
+
+  /** init parameter for the number of threads compiling the themes in the background */
+  private static final String INIT_PARAM_WARMUP_THREADS = LessFilter.class.getName() + ".WARMUP_THREADS";
+
+  /** init parameter to invalidate the compiled themes by watching their source files (true/false) */
+  private static final String INIT_PARAM_WATCH = LessFilter.class.getName() + ".WATCH";
+
+  /** path of the warm-up progress */
+  private static final String WARMUP_PROGRESS_PATH = "/resources/sap-ui-less-warmup.json";
+
+  /** pattern to identify the Less sources of the themes */
+  private static final Pattern PATTERN_THEME_SOURCE = Pattern.compile("/resources/.*/themes/[^/]*/library\\.source\\.less");
 
-  /** array of scripts for the rhino less instance */
-  private static final String[] LESS_JS = {
-    "less-env.js", "less.js", "less-rtl-plugin.js", "less-api.js"
-  };
 
-  /** keeps the scope of the rhino */
-  private Scriptable scope;
+  /** the Less compiler */
+  private LessCompiler compiler;
 
-  /** function to parse the less input */
-  private Function parse;
+  /** the resource loader used by less.js to load the imports */
+  private ResourceLoader resourceLoader;
+
+  /** max. number of compiler scopes */
+  private int poolSize;
+
+  /** compilations in progress (library.source.less path --> compilation) */
+  private ConcurrentMap<String, FutureTask<CompiledTheme>> compilations = new ConcurrentHashMap<String, FutureTask<CompiledTheme>>();
 
 
   /** filter configuration */
   private FilterConfig config;
 
+  /** index of the classpath resources */
+  private ResourceIndex index;
+
+  /** content encoding support (incl. cache for compressed variants) */
+  private ContentEncoding contentEncoding;
+
+
+  /** the compiled themes (library.source.less path --> compiled theme) */
+  private ConcurrentMap<String, CompiledTheme> themes = new ConcurrentHashMap<String, CompiledTheme>();
+
+  /** max. number of compiled themes */
+  private int cacheSize;
+
+  /** persistent cache for the compiled themes or null */
+  private LessCache diskCache;
+
+  /** version of the compiler (hash of the Less scripts) */
+  private String compilerVersion;
+
+
+  /** watcher for the source files of the compiled themes or null */
+  private FileWatcher watcher;
+
+  /** compiled themes which are valid as long as the watcher doesn't report a change (library.source.less paths) */
+  private Set<String> watchedThemes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
-  /** map for the lastModified timestamps for up-to-date check (library.source.less path --> max timestamp of all less files) */
-  private Map<String, Long> lastModified = new HashMap<String, Long>();
+  /** compiled themes whose sources have been changed (library.source.less paths) */
+  private Set<String> staleThemes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
-  /** cache for the generated resources (resource path --> content) */
-  private Map<String, String> cache = new HashMap<String, String>();
+  /** source files of the compiled themes (source file --> library.source.less paths) */
+  private ConcurrentMap<File, Set<String>> dependencies = new ConcurrentHashMap<File, Set<String>>();
+
+  /** timestamps when the watcher reported the last change (file or directory --> timestamp) */
+  private ConcurrentMap<File, Long> changes = new ConcurrentHashMap<File, Long>();
+
+
+  /** executor to compile the themes in the background or null */
+  private volatile ThreadPoolExecutor warmupExecutor;
+
+  /** queued warm-up tasks (library.source.less path --> task) */
+  private Map<String, WarmupTask> warmupTasks = new ConcurrentHashMap<String, WarmupTask>();
+
+  /** number of themes to warm up */
+  private AtomicInteger warmupTotal = new AtomicInteger();
+
+  /** number of warmed up themes */
+  private AtomicInteger warmupCompleted = new AtomicInteger();
+
+  /** sequence to keep the order of the warm-up tasks with the same priority */
+  private AtomicLong warmupSequence = new AtomicLong();
 
 
   /* (non-Javadoc)
@@ -90,55 +231,260 @@ public class LessFilter implements Filter {
     // keep the filter configuration
     this.config = filterConfig;
 
-    // initialize the Less Compiler in the Rhino container
-    try {
+    // index the classpath resources
+    this.index = ResourceIndex.getInstance(filterConfig.getServletContext());
 
-      // create a new JS execution context
-      Context context = Context.enter();
-      context.setOptimizationLevel(9);
-      context.setLanguageVersion(Context.VERSION_1_7);
-
-      // initialize the global context sharing object
-      Global global = new Global();
-      global.init(context);
-
-      // create the scope
-      this.scope = context.initStandardObjects(global);
-
-      // load the scripts and evaluate them in the Rhino context
-      ClassLoader loader = LessFilter.class.getClassLoader();
-      for (String script : LESS_JS) {
-        URL url = loader.getResource(LESS_PATH + script);
-        Reader reader = new InputStreamReader(url.openStream(), "UTF-8");
-        context.evaluateReader(this.scope, reader, script, 1, null);
-        reader.close();
-      }
+    // the content encoding support
+    this.contentEncoding = ContentEncoding.getInstance(filterConfig.getServletContext());
+
+    // determine the max. number of compiler scopes
+    this.poolSize = Math.max(1, Integer.parseInt(this.getParameter(INIT_PARAM_POOL_SIZE, String.valueOf(Runtime.getRuntime().availableProcessors()))));
 
-      // get environment object and set the resource loader used in less (see less-api.js)
-      Scriptable env = (Scriptable) this.scope.get("__env", this.scope);
-      env.put("resourceLoader", env, Context.javaToJS(new ResourceLoader(), this.scope));
+    // determine the max. number of compiled themes
+    this.cacheSize = Math.max(1, Integer.parseInt(this.getParameter(INIT_PARAM_CACHE_SIZE, String.valueOf(DEFAULT_CACHE_SIZE))));
 
-      // keep the reference to the JS less API
-      this.parse = (Function) this.scope.get("parse", this.scope);
+    // the resource loader (incl. cache for the Less sources)
+    this.resourceLoader = new ResourceLoader(Long.parseLong(this.getParameter(INIT_PARAM_RESOURCE_CACHE_SIZE, String.valueOf(DEFAULT_RESOURCE_CACHE_SIZE))));
 
+    // initialize the Less Compiler (Rhino is the fallback for other engines)
+    String engine = this.getParameter(INIT_PARAM_ENGINE, RhinoLessCompiler.NAME);
+    if (!RhinoLessCompiler.NAME.equals(engine)) {
+      try {
+        ScriptEngineLessCompiler compiler = new ScriptEngineLessCompiler(engine, this.poolSize, this.resourceLoader);
+        compiler.init();
+        this.compiler = compiler;
+      } catch (Exception ex) {
+        this.log("Failed to initialize LESS compiler for the script engine " + engine + ", falling back to Rhino.", ex);
+      }
+    }
+    try {
+      if (this.compiler == null) {
+        RhinoLessCompiler compiler = new RhinoLessCompiler(this.poolSize, this.resourceLoader);
+        compiler.init();
+        this.compiler = compiler;
+      }
+      this.compilerVersion = this.compiler.getName() + ":" + this.getCompilerVersion();
     } catch (Exception ex) {
       String message = "Failed to initialize LESS compiler!";
       throw new ServletException(message, ex);
-    } finally {
-      // exit the context
-      Context.exit();
+    }
+    this.log("LESS compiler: " + this.compiler.getName());
+
+    // the persistent cache for the compiled themes
+    String cacheDir = this.getParameter(INIT_PARAM_CACHE_DIR, null);
+    if (cacheDir == null) {
+      Object tempDir = filterConfig.getServletContext().getAttribute("javax.servlet.context.tempdir");
+      if (tempDir instanceof File) {
+        this.diskCache = new LessCache(new File((File) tempDir, DEFAULT_CACHE_DIR_NAME));
+      }
+    } else if (cacheDir.trim().length() > 0) {
+      this.diskCache = new LessCache(new File(cacheDir.trim()));
+    }
+    if (this.diskCache != null) {
+      this.log("Compiled themes are cached in " + this.diskCache.getDirectory());
+    }
+
+    // watch the source files of the compiled themes
+    if (Boolean.parseBoolean(this.getParameter(INIT_PARAM_WATCH, "true"))) {
+      try {
+        this.watcher = new FileWatcher("LessFilter-watcher", new FileWatcher.Listener() {
+          @Override
+          public void changed(File file) {
+            LessFilter.this.invalidate(file);
+          }
+        });
+      } catch (IOException ex) {
+        this.log("Failed to watch the source files, the timestamps will be checked instead.", ex);
+      }
+    }
+
+    // compile the themes in the background
+    if (Boolean.parseBoolean(this.getParameter(INIT_PARAM_WARMUP, "false"))) {
+      this.startWarmup(Integer.parseInt(this.getParameter(INIT_PARAM_WARMUP_THREADS, String.valueOf(Math.max(1, this.poolSize - 1)))));
     }
 
   } // method: init
 
 
+  /**
+   * returns the value of the filter init parameter or as fallback the
+   * value of the context init parameter
+   * @param name name of the parameter
+   * @param defaultValue default value if the parameter is not defined
+   * @return value of the parameter
+   */
+  private String getParameter(String name, String defaultValue) {
+    String value = this.config.getInitParameter(name);
+    if (value == null) {
+      value = this.config.getServletContext().getInitParameter(name);
+    }
+    return value != null ? value : defaultValue;
+  } // method: getParameter
+
+
+  /**
+   * determines the version of the compiler by hashing the Less scripts
+   * (compiled themes of other versions are not reused)
+   * @return the version of the compiler
+   * @throws IOException
+   */
+  private String getCompilerVersion() throws IOException {
+    StringBuilder scripts = new StringBuilder();
+    ClassLoader loader = LessFilter.class.getClassLoader();
+    for (String script : LessCompiler.LESS_JS) {
+      InputStream is = loader.getResource(LessCompiler.LESS_PATH + script).openStream();
+      try {
+        scripts.append(IOUtils.toString(is, "UTF-8"));
+      } finally {
+        IOUtils.closeQuietly(is);
+      }
+    }
+    return LessCache.hash(scripts.toString());
+  } // method: getCompilerVersion
+
+
+  /**
+   * starts the warm-up: the themes are determined and compiled by a bounded
+   * executor in the background (the determination of the themes is the first
+   * task of the executor so that the initialization is not blocked)
+   * @param threads number of threads
+   */
+  private void startWarmup(int threads) {
+
+    final DiscoveryService discovery = DiscoveryService.getInstance(this.config.getServletContext());
+    if (discovery == null) {
+      this.log("The warm-up requires the DiscoveryService which must be registered as ServletContextListener for this web application!");
+      return;
+    }
+
+    // the executor uses a priority queue (the tasks are executed in the order of their priority)
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "LessFilter-warmup-" + this.count.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      }
+    });
+
+    this.warmupExecutor = executor;
+
+    // determine the themes and queue them for compilation (the filter may
+    // be destroyed in the meantime which shuts down the executor)
+    executor.execute(new WarmupTask(null, Integer.MIN_VALUE) {
+      @Override
+      public void run() {
+        long millis = System.currentTimeMillis();
+        List<String> sourcePaths = new ArrayList<String>();
+        for (String resource : discovery.getResources()) {
+          if (PATTERN_THEME_SOURCE.matcher(resource).matches()) {
+            sourcePaths.add(resource);
+          }
+        }
+        LessFilter.this.log("Warm-up of " + sourcePaths.size() + " themes started");
+        LessFilter.this.warmupTotal.set(sourcePaths.size());
+        for (String sourcePath : sourcePaths) {
+          if (executor.isShutdown()) {
+            return;
+          }
+          // base themes first as they are imported by the other themes
+          WarmupTask task = new WarmupTask(sourcePath, sourcePath.contains("/themes/base/") ? 0 : 1);
+          LessFilter.this.warmupTasks.put(sourcePath, task);
+          try {
+            executor.execute(task);
+          } catch (RejectedExecutionException ex) {
+            return;
+          }
+        }
+        LessFilter.this.log("  => lookup took " + (System.currentTimeMillis() - millis) + "ms");
+      }
+    });
+
+  } // method: startWarmup
+
+
+  /**
+   * takes the theme out of the warm-up queue (if still queued) as the theme
+   * is compiled for a request immediately
+   * @param sourcePath path of the library.source.less
+   */
+  private void prioritizeWarmup(String sourcePath) {
+    ThreadPoolExecutor executor = this.warmupExecutor;
+    if (executor == null || executor.isShutdown()) {
+      return;
+    }
+    WarmupTask task = this.warmupTasks.remove(sourcePath);
+    if (task != null) {
+      executor.remove(task);
+      this.completeWarmup();
+    }
+  } // method: prioritizeWarmup
+
+
+  /**
+   * counts a warmed up theme and logs the end of the warm-up
+   */
+  private void completeWarmup() {
+    int completed = this.warmupCompleted.incrementAndGet();
+    if (completed == this.warmupTotal.get()) {
+      this.log("Warm-up of " + completed + " themes finished");
+    }
+  } // method: completeWarmup
+
+
+  /**
+   * writes the progress of the warm-up as JSON into the response
+   * @param response the response
+   * @throws IOException
+   */
+  private void writeWarmupProgress(HttpServletResponse response) throws IOException {
+    Map<String, Object> progress = new LinkedHashMap<String, Object>();
+    progress.put("enabled", this.warmupExecutor != null);
+    progress.put("total", this.warmupTotal.get());
+    progress.put("completed", this.warmupCompleted.get());
+    progress.put("pending", new TreeSet<String>(this.warmupTasks.keySet()));
+    byte[] content = new GsonBuilder().setPrettyPrinting().create().toJson(progress).getBytes("UTF-8");
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType("application/json;charset=UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+    response.setContentLength(content.length);
+    OutputStream os = response.getOutputStream();
+    os.write(content);
+    os.flush();
+  } // method: writeWarmupProgress
+
+
   /* (non-Javadoc)
    * @see javax.servlet.Filter#destroy()
    */
   @Override
   public void destroy() {
-    this.parse = null;
-    this.scope = null;
+    ThreadPoolExecutor executor = this.warmupExecutor;
+    if (executor != null) {
+      this.warmupExecutor = null;
+      executor.shutdownNow();
+    }
+    this.warmupTasks.clear();
+    if (this.watcher != null) {
+      this.watcher.close();
+      this.watcher = null;
+    }
+    this.watchedThemes.clear();
+    this.staleThemes.clear();
+    this.dependencies.clear();
+    this.changes.clear();
+    if (this.compiler != null) {
+      this.compiler.destroy();
+      this.compiler = null;
+    }
+    if (this.resourceLoader != null) {
+      this.resourceLoader.clear();
+      this.resourceLoader = null;
+    }
+    this.compilations.clear();
+    this.themes.clear();
     this.config = null;
   } // method: destroy
 
@@ -161,29 +507,48 @@ public class LessFilter implements Filter {
       // only process GET or HEAD requests
       if (method.matches("GET|HEAD")) {
 
+        // return the progress of the warm-up
+        if (WARMUP_PROGRESS_PATH.equals(path)) {
+          this.writeWarmupProgress(httpResponse);
+          return;
+        }
+
         // compile the less if required (up-to-date check happens in the compile function)
         Matcher m = PATTERN_THEME_REQUEST.matcher(path);
         if (m.matches()) {
 
-          // check for existence of the resource
-          URL url = this.findResource(path);
+          // check for existence of the resource (not needed for watched themes)
+          String prefixPath = m.group(1);
+          String sourcePath = prefixPath + "/library.source.less";
+          URL url = this.watchedThemes.contains(sourcePath) ? null : this.findResource(path);
           if (url == null) {
 
-            String prefixPath = m.group(1);
-            String sourcePath = prefixPath + "/library.source.less";
+            // themes which are not compiled yet are compiled immediately
+            if (!this.themes.containsKey(sourcePath)) {
+              this.prioritizeWarmup(sourcePath);
+            }
 
-            this.compile(sourcePath, false, false);
+            CompiledTheme theme = this.compile(sourcePath, false, false);
 
             // return the cached CSS or JSON file
-            if (this.cache.containsKey(path)) {
+            byte[] cachedContent = theme != null ? theme.getContent(m.group(2)) : null;
+            if (cachedContent != null) {
+
+              theme.lastServed = System.currentTimeMillis();
 
+              String contentType = this.config.getServletContext().getMimeType(path);
               httpResponse.setStatus(HttpServletResponse.SC_OK);
-              response.setContentType(this.config.getServletContext().getMimeType(path));
-              httpResponse.addDateHeader("Last-Modified", this.lastModified.get(sourcePath));
+              response.setContentType(contentType);
+              httpResponse.addDateHeader("Last-Modified", theme.lastModified);
+
+              // compress the content if accepted by the client (the compressed
+              // variant is cached by the path and the version of the theme)
+              byte[] content = this.contentEncoding.encode(httpRequest, httpResponse, contentType, cachedContent, path + "@" + theme.lastModified);
+              response.setContentLength(content.length);
 
               if ("GET".equals(method)) {
                 OutputStream os = response.getOutputStream();
-                IOUtils.write(this.cache.get(path), os, "UTF-8");
+                os.write(content);
                 IOUtils.closeQuietly(os);
 
                 os.flush();
@@ -241,20 +606,12 @@ public class LessFilter implements Filter {
     // normalize the path (JarURLConnection cannot resolve non-normalized paths)
     String normalizedPath = URI.create(path).normalize().toString();
 
-    // define the classpath for the classloader lookup
-    String classPath = CLASSPATH_PREFIX + normalizedPath;
-
     // first lookup the resource in the web context path
     URL url = this.config.getServletContext().getResource(normalizedPath);
 
-    // lookup the resource in the current threads classloaders
+    // lookup the resource in the classpath (current threads and local classloader)
     if (url == null) {
-      url = Thread.currentThread().getContextClassLoader().getResource(classPath);
-    }
-
-    // lookup the resource in the local classloader
-    if (url == null) {
-      url = ResourceServlet.class.getClassLoader().getResource(classPath);
+      url = this.index.findResource(normalizedPath);
     }
 
     return url;
@@ -271,24 +628,7 @@ public class LessFilter implements Filter {
     long lastModified = -1;
     try {
       for (String path : paths) {
-        URL url = this.findResource(path);
-        if (url != null) {
-          InputStream is = null;
-          try {
-            URLConnection conn = url.openConnection();
-            // for JAR files we do not open the connection to avoid resource leaks!
-            if (conn instanceof JarURLConnection) {
-              File jarFile = new File(((JarURLConnection) conn).getJarFile().getName());
-              lastModified = Math.max(lastModified, jarFile.lastModified());
-            } else {
-              conn.connect();
-              is = conn.getInputStream();
-              lastModified = Math.max(lastModified, conn.getLastModified());
-            }
-          } finally {
-            IOUtils.closeQuietly(is);
-          }
-        }
+        lastModified = Math.max(lastModified, this.getLastModified(path));
       }
     } catch (Exception ex) {
       this.log("Failed to determine max last modified timestamp.", ex);
@@ -298,12 +638,353 @@ public class LessFilter implements Filter {
 
 
   /**
-   * compiles the CSS, RTL-CSS and theme parameters as JSON
+   * determines the last modified timestamp for the given path
+   * @param path path of the resource
+   * @return last modified timestamp or -1 if the resource doesn't exist
+   * @throws IOException
+   */
+  private long getLastModified(String path) throws IOException {
+    URL url = this.findResource(path);
+    if (url != null) {
+      InputStream is = null;
+      try {
+        URLConnection conn = url.openConnection();
+        // for JAR files we do not open the connection to avoid resource leaks!
+        if (conn instanceof JarURLConnection) {
+          File jarFile = new File(((JarURLConnection) conn).getJarFile().getName());
+          return jarFile.lastModified();
+        } else {
+          conn.connect();
+          is = conn.getInputStream();
+          return conn.getLastModified();
+        }
+      } finally {
+        IOUtils.closeQuietly(is);
+      }
+    }
+    return -1;
+  } // method: getLastModified
+
+
+  /**
+   * calculates the hash of the source set of a theme (compiler options and
+   * the paths and timestamps of the source file and the imported resources)
+   * @param sourcePath path of the library.source.less
+   * @param resources the imported resources (semicolon separated)
+   * @param options the compiler options
+   * @return the hash of the source set
+   * @throws IOException
+   */
+  private String getSourceHash(String sourcePath, String resources, String options) throws IOException {
+    StringBuilder sources = new StringBuilder(options);
+    sources.append('\n').append(sourcePath).append('@').append(this.getLastModified(sourcePath));
+    for (String resource : resources.split(";")) {
+      if (resource.length() > 0) {
+        sources.append('\n').append(resource).append('@').append(this.getLastModified(resource));
+      }
+    }
+    return LessCache.hash(sources.toString());
+  } // method: getSourceHash
+
+
+  /**
+   * watches the directory of the source file before it is read so that
+   * changes during a compilation are reported
+   * @param path path of the source
+   * @return the source file or null if the source is not a file
+   * @throws IOException
+   */
+  private File watchSource(String path) throws IOException {
+    if (this.watcher == null) {
+      return null;
+    }
+    URL url = this.findResource(path);
+    if (url != null && "file".equals(url.getProtocol())) {
+      try {
+        File file = new File(url.toURI());
+        this.watcher.watch(file);
+        return file;
+      } catch (URISyntaxException ex) {
+        return null;
+      }
+    }
+    return null;
+  } // method: watchSource
+
+
+  /**
+   * watches the source files of the compiled theme - the theme is only
+   * considered as watched if all sources are files or JAR entries (the
+   * latter are immutable) and if no change of its sources has been reported
+   * since the compilation started (the sources are watched before they are
+   * read, see {@link #watchSource(String)})
+   * @param sourcePath path of the library.source.less
+   * @param resources the imported resources (semicolon separated)
+   * @param started timestamp when the compilation started
+   * @throws IOException
+   */
+  private void watchTheme(String sourcePath, String resources, long started) throws IOException {
+    List<String> sources = new ArrayList<String>();
+    sources.add(sourcePath);
+    sources.addAll(Arrays.asList(resources.split(";")));
+    List<File> files = new ArrayList<File>();
+    for (String source : sources) {
+      if (source.length() > 0) {
+        File file = this.watchSource(source);
+        if (file != null) {
+          files.add(file);
+        } else {
+          URL url = this.findResource(source);
+          if (url == null || !"jar".equals(url.getProtocol())) {
+            // the source cannot be watched
+            return;
+          }
+        }
+      }
+    }
+    synchronized (this.dependencies) {
+      for (File file : files) {
+        Set<String> themes = this.dependencies.get(file);
+        if (themes == null) {
+          themes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+          this.dependencies.put(file, themes);
+        }
+        themes.add(sourcePath);
+      }
+    }
+    synchronized (this.watchedThemes) {
+      // a change may have been reported in the meantime
+      if (this.isChangedSince(files, started)) {
+        this.staleThemes.add(sourcePath);
+        this.log("The sources of " + sourcePath + " have been changed during the compilation.");
+      } else if (!this.staleThemes.contains(sourcePath)) {
+        this.watchedThemes.add(sourcePath);
+      }
+    }
+  } // method: watchTheme
+
+
+  /**
+   * checks whether the watcher reported a change of the files (or of their
+   * directories) since the given timestamp
+   * @param files the files
+   * @param since the timestamp
+   * @return true, if a change has been reported
+   */
+  private boolean isChangedSince(List<File> files, long since) {
+    for (File file : files) {
+      Long changed = this.changes.get(file);
+      Long directoryChanged = this.changes.get(file.getParentFile());
+      if ((changed != null && changed >= since) || (directoryChanged != null && directoryChanged >= since)) {
+        return true;
+      }
+    }
+    return false;
+  } // method: isChangedSince
+
+
+  /**
+   * invalidates the compiled themes which depend on the changed file (or
+   * on files of the directory if a directory is reported)
+   * @param file the changed file or directory
+   */
+  private void invalidate(File file) {
+    this.changes.put(file, System.currentTimeMillis());
+    ResourceLoader resourceLoader = this.resourceLoader;
+    if (resourceLoader != null) {
+      resourceLoader.invalidate(file);
+    }
+    for (Map.Entry<File, Set<String>> entry : this.dependencies.entrySet()) {
+      if (file.equals(entry.getKey()) || file.equals(entry.getKey().getParentFile())) {
+        for (String sourcePath : entry.getValue()) {
+          synchronized (this.watchedThemes) {
+            this.staleThemes.add(sourcePath);
+            if (this.watchedThemes.remove(sourcePath)) {
+              this.log("The sources of " + sourcePath + " have been changed.");
+            }
+          }
+        }
+      }
+    }
+  } // method: invalidate
+
+
+  /**
+   * reads the compiled theme from the persistent cache if the sources did
+   * not change since it has been compiled
+   * @param sourcePath path of the library.source.less
+   * @param path path of the theme
+   * @param options the compiler options
+   * @return the compiled theme or null
+   * @throws IOException
+   */
+  private CompiledTheme readCompiledTheme(String sourcePath, String path, String options) throws IOException {
+    LessCache.Entry entry = this.diskCache.read(path + "?" + options);
+    if (entry != null && entry.resources != null && entry.sourceHash != null &&
+        entry.sourceHash.equals(this.getSourceHash(sourcePath, entry.resources, options))) {
+      this.log("Loaded CSS/JSON of theme " + path + " from the cache directory");
+      return new CompiledTheme(entry.css, entry.cssRtl, entry.json, entry.resources, entry.lastModified);
+    } else if (entry != null) {
+      // the sources have been changed since the theme has been persisted
+      this.diskCache.remove(path + "?" + options);
+    }
+    return null;
+  } // method: readCompiledTheme
+
+
+  /**
+   * writes the compiled theme into the persistent cache (failures are only logged)
+   * @param sourcePath path of the library.source.less
+   * @param path path of the theme
+   * @param options the compiler options
+   * @param theme the compiled theme
+   */
+  private void writeCompiledTheme(String sourcePath, String path, String options, CompiledTheme theme) {
+    try {
+      this.diskCache.write(path + "?" + options, new LessCache.Entry(
+        this.getSourceHash(sourcePath, theme.resources, options),
+        theme.lastModified,
+        theme.resources,
+        new String(theme.css, "UTF-8"),
+        new String(theme.cssRtl, "UTF-8"),
+        new String(theme.json, "UTF-8")));
+    } catch (IOException ex) {
+      this.log("Failed to write the compiled theme " + path + " into the cache directory.", ex);
+    }
+  } // method: writeCompiledTheme
+
+
+  /**
+   * deletes the compiled theme from the persistent cache (if enabled)
+   * @param path path of the theme
+   * @param options the compiler options
+   */
+  private void deleteCompiledTheme(String path, String options) {
+    if (this.diskCache != null) {
+      this.diskCache.remove(path + "?" + options);
+    }
+  } // method: deleteCompiledTheme
+
+
+  /**
+   * checks whether the compiled theme is up-to-date (watched themes are
+   * up-to-date until a change is reported, otherwise the timestamps of the
+   * imported resources are checked)
+   * @param sourcePath path of the library.source.less
+   * @param theme the compiled theme
+   * @return true, if the compiled theme is up-to-date
+   */
+  private boolean isUpToDate(String sourcePath, CompiledTheme theme) {
+    if (this.watchedThemes.contains(sourcePath)) {
+      return true;
+    } else if (this.staleThemes.contains(sourcePath)) {
+      return false;
+    }
+    return theme.lastModified >= this.getMaxLastModified(theme.resources.split(";"));
+  } // method: isUpToDate
+
+
+  /**
+   * publishes the compiled theme and evicts the least recently served
+   * themes if the max. number of compiled themes is exceeded
+   * @param sourcePath path of the library.source.less
+   * @param theme the compiled theme
+   */
+  private void putTheme(String sourcePath, CompiledTheme theme) {
+    theme.lastServed = System.currentTimeMillis();
+    this.themes.put(sourcePath, theme);
+    while (this.themes.size() > this.cacheSize) {
+      Map.Entry<String, CompiledTheme> eldest = null;
+      for (Map.Entry<String, CompiledTheme> entry : this.themes.entrySet()) {
+        if (entry.getValue() != theme && (eldest == null || entry.getValue().lastServed < eldest.getValue().lastServed)) {
+          eldest = entry;
+        }
+      }
+      if (eldest == null) {
+        break;
+      }
+      this.removeTheme(eldest.getKey(), eldest.getValue());
+    }
+  } // method: putTheme
+
+
+  /**
+   * removes the compiled theme
+   * @param sourcePath path of the library.source.less
+   * @param theme the compiled theme to remove or null to remove any
+   */
+  private void removeTheme(String sourcePath, CompiledTheme theme) {
+    boolean removed = theme != null ? this.themes.remove(sourcePath, theme) : this.themes.remove(sourcePath) != null;
+    if (removed) {
+      this.watchedThemes.remove(sourcePath);
+      synchronized (this.dependencies) {
+        Iterator<Set<String>> it = this.dependencies.values().iterator();
+        while (it.hasNext()) {
+          Set<String> themes = it.next();
+          if (themes.remove(sourcePath) && themes.isEmpty()) {
+            it.remove();
+          }
+        }
+      }
+    }
+  } // method: removeTheme
+
+
+  /**
+   * returns the compiled CSS, RTL-CSS and theme parameters as JSON - the
+   * theme is compiled if it is not compiled yet or not up-to-date (only one
+   * compilation per theme at a time, concurrent requests wait for its result)
    * @param sourcePath source path
    * @param compressCSS true, if CSS should be compressed
    * @param compressJSON true if JSON should be compressed
+   * @return the compiled theme or null if the theme cannot be compiled
    */
-  private void compile(String sourcePath, boolean compressCSS, boolean compressJSON) {
+  private CompiledTheme compile(final String sourcePath, final boolean compressCSS, final boolean compressJSON) {
+
+    // return the compiled theme as long as it is up-to-date (without locking)
+    CompiledTheme theme = this.themes.get(sourcePath);
+    if (theme != null && this.isUpToDate(sourcePath, theme)) {
+      return theme;
+    }
+
+    // join the compilation in progress or start a new one
+    FutureTask<CompiledTheme> compilation = new FutureTask<CompiledTheme>(new Callable<CompiledTheme>() {
+      @Override
+      public CompiledTheme call() {
+        return LessFilter.this.compileTheme(sourcePath, compressCSS, compressJSON);
+      }
+    });
+    FutureTask<CompiledTheme> inflight = this.compilations.putIfAbsent(sourcePath, compilation);
+    if (inflight == null) {
+      try {
+        compilation.run();
+      } finally {
+        this.compilations.remove(sourcePath, compilation);
+      }
+      inflight = compilation;
+    }
+    try {
+      return inflight.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException ex) {
+      this.log("Failed to compile CSS for " + sourcePath, ex.getCause());
+      return null;
+    }
+
+  } // method: compile
+
+
+  /**
+   * compiles the CSS, RTL-CSS and theme parameters as JSON and publishes
+   * the compiled theme
+   * @param sourcePath source path
+   * @param compressCSS true, if CSS should be compressed
+   * @param compressJSON true if JSON should be compressed
+   * @return the compiled theme or null if the theme cannot be compiled
+   */
+  private CompiledTheme compileTheme(String sourcePath, boolean compressCSS, boolean compressJSON) {
 
     Matcher m = PATTERN_THEME_REQUEST_PARTS.matcher(sourcePath);
     if (m.matches()) {
@@ -314,76 +995,96 @@ public class LessFilter implements Filter {
       String libraryName = library.replace('/', '.');
       String theme = m.group(3);
       String path = prefixPath + theme + "/";
+      String options = "compressCSS=" + compressCSS + ";compressJSON=" + compressJSON + ";compiler=" + this.compilerVersion;
 
       try {
 
-        URL url = this.findResource(sourcePath);
-        if (url != null) {
+        // the theme may have been compiled in the meantime
+        CompiledTheme compiledTheme = this.themes.get(sourcePath);
+        if (compiledTheme != null && this.isUpToDate(sourcePath, compiledTheme)) {
+          return compiledTheme;
+        }
+        boolean compiled = compiledTheme != null;
+        this.staleThemes.remove(sourcePath);
 
-          // read the library.source.less
-          InputStream is = null;
-          try {
+        // changes reported after this timestamp are not part of the compilation
+        long started = System.currentTimeMillis();
+        this.watchSource(sourcePath);
 
-            URLConnection conn = url.openConnection();
-            conn.connect();
-            is = conn.getInputStream();
+        URL url = this.findResource(sourcePath);
+        if (url != null) {
 
-            // up-to-date check
-            String resources = this.cache.get(path + "resources");
-            long lastModified = resources != null ? this.getMaxLastModified(resources.split(";")) : -1;
-            if (!this.lastModified.containsKey(sourcePath) || this.lastModified.get(sourcePath) < lastModified) {
+          // lazily load the compiled theme from the persistent cache
+          compiledTheme = !compiled && this.diskCache != null ? this.readCompiledTheme(sourcePath, path, options) : null;
 
-              // some info
-              this.log("Compiling CSS/JSON of library " + libraryName + " for theme " + theme);
+          if (compiledTheme == null) {
 
-              // read the content
-              String input = IOUtils.toString(is, "UTF-8");
+            // some info
+            this.log("Compiling CSS/JSON of library " + libraryName + " for theme " + theme);
 
-              // time measurement begin
-              long millis = System.currentTimeMillis();
+            // read the library.source.less
+            String input;
+            InputStream is = null;
+            try {
+              URLConnection conn = url.openConnection();
+              conn.connect();
+              is = conn.getInputStream();
+              input = IOUtils.toString(is, "UTF-8");
+            } finally {
+              IOUtils.closeQuietly(is);
+            }
 
-              // compile the CSS/JSON
-              Scriptable result = this.compileCSS(input, path, compressCSS, compressJSON, libraryName);
+            // time measurement begin
+            long millis = System.currentTimeMillis();
 
-              // cache the result
-              String css = Context.toString(ScriptableObject.getProperty((Scriptable) result, "css"));
-              this.cache.put(path + "library.css", css);
-              String rtlCss = Context.toString(ScriptableObject.getProperty((Scriptable) result, "cssRtl"));
-              this.cache.put(path + "library-RTL.css", rtlCss);
-              String json = Context.toString(ScriptableObject.getProperty((Scriptable) result, "json"));
-              this.cache.put(path + "library-parameters.json", json);
-              resources = Context.toString(ScriptableObject.getProperty((Scriptable) result, "resources"));
-              this.cache.put(path + "resources", resources);
+            // compile the CSS/JSON
+            LessCompiler.Result result = this.compileCSS(input, path, compressCSS, compressJSON, libraryName);
 
-              // log the compile duration
-              this.log("  => took " + (System.currentTimeMillis() - millis) + "ms");
+            // create the compiled theme (incl. the timestamp of the compiled resources
+            // which is determined by the resource loader for the loaded content)
+            long lastModified = -1;
+            for (String resource : result.resources.split(";")) {
+              if (resource.length() > 0) {
+                lastModified = Math.max(lastModified, this.resourceLoader.lastModified(resource));
+              }
+            }
+            compiledTheme = new CompiledTheme(result.css, result.cssRtl, result.json, result.resources, lastModified);
 
-              // store when the resource has been compiled
-              this.lastModified.put(sourcePath, this.getMaxLastModified(resources.split(";")));
+            // log the compile duration
+            this.log("  => took " + (System.currentTimeMillis() - millis) + "ms");
 
+            // persist the compiled theme
+            if (this.diskCache != null) {
+              this.writeCompiledTheme(sourcePath, path, options, compiledTheme);
             }
 
-          } finally {
-            IOUtils.closeQuietly(is);
           }
 
+          // publish the compiled theme and watch its sources
+          this.putTheme(sourcePath, compiledTheme);
+          if (this.watcher != null) {
+            this.watchTheme(sourcePath, compiledTheme.resources, started);
+          }
+          return compiledTheme;
+
         } else {
           this.log("The less source file cannot be found: " + sourcePath);
+          this.removeTheme(sourcePath, null);
+          this.deleteCompiledTheme(path, options);
         }
 
       } catch (Exception ex) {
         // in case of error we also cleanup the cache!
         this.log("Failed to compile CSS for " + sourcePath, ex);
-        this.cache.remove(path + "library.css");
-        this.cache.remove(path + "library-RTL.css");
-        this.cache.remove(path + "library-parameters.json");
-        this.cache.remove(path + "resources");
-        this.lastModified.remove(sourcePath);
+        this.removeTheme(sourcePath, null);
+        this.deleteCompiledTheme(path, options);
       }
 
     }
 
-  } // method: compile
+    return null;
+
+  } // method: compileTheme
 
 
   /**
@@ -393,35 +1094,276 @@ public class LessFilter implements Filter {
    * @param compressCSS true, if CSS should be compressed
    * @param compressJSON true if JSON should be compressed
    * @param libraryName name of the library
+   * @return the result of the compilation
+   * @throws IOException
    */
-  private synchronized Scriptable compileCSS(String input, String path, boolean compressCSS, boolean compressJSON, String libraryName) {
-    // compile the CSS/JSON within the Rhino environment
-    return (Scriptable) Context.call(null, this.parse, this.scope, this.scope, new Object[] { input, path, compressCSS, compressJSON, libraryName });
+  private LessCompiler.Result compileCSS(String input, String path, boolean compressCSS, boolean compressJSON, String libraryName) throws IOException {
+    // compile the CSS/JSON within a scope of the compiler
+    return this.compiler.compile(input, path, compressCSS, compressJSON, libraryName);
   } // method: compileCSS
 
 
+  /**
+   * The class <code>CompiledTheme</code> keeps the compiled CSS, RTL-CSS and
+   * theme parameters of a theme encoded as UTF-8 (so that serving them doesn't
+   * require to encode them). The content is immutable, only the timestamp
+   * when the theme has been served the last time is updated.
+   */
+  static class CompiledTheme {
+
+    /** charset of the content */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** the CSS */
+    final byte[] css;
+
+    /** the RTL-CSS */
+    final byte[] cssRtl;
+
+    /** the theme parameters as JSON */
+    final byte[] json;
+
+    /** the imported resources (semicolon separated) */
+    final String resources;
+
+    /** max last modified timestamp of the imported resources */
+    final long lastModified;
+
+    /** timestamp when the theme has been served the last time */
+    volatile long lastServed;
+
+    CompiledTheme(String css, String cssRtl, String json, String resources, long lastModified) {
+      this.css = css.getBytes(UTF_8);
+      this.cssRtl = cssRtl.getBytes(UTF_8);
+      this.json = json.getBytes(UTF_8);
+      this.resources = resources;
+      this.lastModified = lastModified;
+    } // constructor
+
+    /**
+     * returns the content for the given file name
+     * @param name file name (library.css, library-RTL.css or library-parameters.json)
+     * @return the content or null
+     */
+    byte[] getContent(String name) {
+      if ("library.css".equals(name)) {
+        return this.css;
+      } else if ("library-RTL.css".equals(name)) {
+        return this.cssRtl;
+      } else if ("library-parameters.json".equals(name)) {
+        return this.json;
+      }
+      return null;
+    } // method: getContent
+
+  } // inner class: CompiledTheme
+
+
+  /**
+   * The class <code>WarmupTask</code> compiles a theme in the background.
+   * The tasks are ordered by their priority (lower values first) and the
+   * order in which they have been queued.
+   */
+  class WarmupTask implements Runnable, Comparable<WarmupTask> {
+
+    /** path of the library.source.less */
+    final String sourcePath;
+
+    /** priority of the task (lower values first) */
+    final int priority;
+
+    /** sequence number of the task */
+    final long sequence;
+
+    WarmupTask(String sourcePath, int priority) {
+      this.sourcePath = sourcePath;
+      this.priority = priority;
+      this.sequence = LessFilter.this.warmupSequence.incrementAndGet();
+    } // constructor
+
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      if (LessFilter.this.warmupTasks.remove(this.sourcePath) != null) {
+        LessFilter.this.compile(this.sourcePath, false, false);
+        LessFilter.this.completeWarmup();
+      }
+    } // method: run
+
+    /* (non-Javadoc)
+     * @see java.lang.Comparable#compareTo(java.lang.Object)
+     */
+    @Override
+    public int compareTo(WarmupTask other) {
+      if (this.priority != other.priority) {
+        return this.priority < other.priority ? -1 : 1;
+      }
+      return this.sequence < other.sequence ? -1 : (this.sequence == other.sequence ? 0 : 1);
+    } // method: compareTo
+
+  } // inner class: WarmupTask
+
+
   /**
    * The <code>ResourceLoader</code> is used to load dedicated resources
-   * requested by Rhino out of the classpath.
+   * requested by less.js out of the classpath. The loaded resources are
+   * cached by their normalized path: watched resources (files and JAR
+   * entries) are valid until the watcher reports a change, other resources
+   * and missing resources are revalidated after a short time.
    */
   public class ResourceLoader {
 
+    /** cache for the loaded resources (normalized path --> resource) or null */
+    private final LRUCache<String, LoadedResource> cache;
+
+    /** files of the cached resources (file --> normalized path) */
+    private final ConcurrentMap<File, String> files = new ConcurrentHashMap<File, String>();
+
+    ResourceLoader(long cacheSize) {
+      this.cache = cacheSize > 0 ? new LRUCache<String, LoadedResource>(cacheSize, new LRUCache.Weigher<LoadedResource>() {
+        @Override
+        public long weigh(LoadedResource value) {
+          return value.getSize();
+        }
+      }) : null;
+    } // constructor
+
     /**
      * loads a resource for the specified path
      * @param path path of the resource
      */
     public String load(String path) throws IOException {
-      String content = null;
-      URL resource = LessFilter.this.findResource(path);
-      if (resource != null) {
-        InputStream is = resource.openStream();
-        content = IOUtils.toString(is, "UTF-8");
-        IOUtils.closeQuietly(is);
-      }
-      return content;
+      return this.lookup(URI.create(path).normalize().toString()).content;
     } // method: load
 
+    /**
+     * looks up the resource in the cache or loads it if it is not cached or
+     * not valid anymore (the resource is watched before it is read)
+     * @param normalizedPath normalized path of the resource
+     * @return the loaded resource
+     * @throws IOException
+     */
+    private LoadedResource lookup(String normalizedPath) throws IOException {
+
+      // the cached resource is valid until it expires or a change is reported
+      long now = System.currentTimeMillis();
+      LoadedResource loaded = this.cache != null ? this.cache.get(normalizedPath) : null;
+      if (loaded != null && loaded.validUntil > now) {
+        return loaded;
+      }
+
+      // watch the resource before it is validated or read (JAR entries are immutable)
+      File file = LessFilter.this.watchSource(normalizedPath);
+      URL resource = LessFilter.this.findResource(normalizedPath);
+      boolean watched = file != null || (LessFilter.this.watcher != null && resource != null && "jar".equals(resource.getProtocol()));
+      long validUntil = watched ? Long.MAX_VALUE : now + RESOURCE_TTL;
+
+      // load the resource unless the cached content is still up-to-date
+      long lastModified = LessFilter.this.getLastModified(normalizedPath);
+      if (loaded != null && loaded.content != null && loaded.lastModified == lastModified) {
+        loaded = new LoadedResource(loaded.content, lastModified, validUntil);
+      } else {
+        String content = null;
+        if (resource != null) {
+          InputStream is = resource.openStream();
+          try {
+            content = IOUtils.toString(is, "UTF-8");
+          } finally {
+            IOUtils.closeQuietly(is);
+          }
+        }
+        loaded = new LoadedResource(content, content != null ? lastModified : -1, validUntil);
+      }
+
+      // cache the resource (a change may have been reported in the meantime)
+      if (this.cache != null) {
+        this.cache.put(normalizedPath, loaded);
+        if (file != null) {
+          this.files.put(file, normalizedPath);
+          if (LessFilter.this.isChangedSince(Collections.singletonList(file), now)) {
+            this.cache.remove(normalizedPath);
+          }
+        }
+      }
+      return loaded;
+
+    } // method: lookup
+
+    /**
+     * removes the cached resources of the changed file (or of the files of
+     * the directory if a directory is reported)
+     * @param file the changed file or directory
+     */
+    void invalidate(File file) {
+      Iterator<Map.Entry<File, String>> it = this.files.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<File, String> entry = it.next();
+        if (file.equals(entry.getKey()) || file.equals(entry.getKey().getParentFile())) {
+          if (this.cache != null) {
+            this.cache.remove(entry.getValue());
+          }
+          it.remove();
+        }
+      }
+    } // method: invalidate
+
+    /**
+     * determines the last modified timestamp of the resource for the specified
+     * path (used by less.js to validate the cached imports) - the timestamp of
+     * the cached resource is reused as long as it is valid
+     * @param path path of the resource
+     * @return last modified timestamp or -1 if the resource doesn't exist
+     */
+    public long lastModified(String path) throws IOException {
+      String normalizedPath = URI.create(path).normalize().toString();
+      return this.cache != null ? this.lookup(normalizedPath).lastModified : LessFilter.this.getLastModified(normalizedPath);
+    } // method: lastModified
+
+    /**
+     * removes all cached resources
+     */
+    void clear() {
+      if (this.cache != null) {
+        this.cache.clear();
+      }
+      this.files.clear();
+    } // method: clear
+
   } // inner class: ResourceLoader
 
 
+  /**
+   * The class <code>LoadedResource</code> keeps the content of a resource
+   * loaded for less.js.
+   */
+  static class LoadedResource {
+
+    /** the content or null if the resource is missing */
+    final String content;
+
+    /** last modified timestamp of the resource or -1 if the resource is missing */
+    final long lastModified;
+
+    /** timestamp until the resource is valid without revalidation */
+    final long validUntil;
+
+    LoadedResource(String content, long lastModified, long validUntil) {
+      this.content = content;
+      this.lastModified = lastModified;
+      this.validUntil = validUntil;
+    } // constructor
+
+    /**
+     * returns the approx. size of the content in bytes
+     * @return the size in bytes
+     */
+    long getSize() {
+      return this.content != null ? 2L * this.content.length() : 1;
+    } // method: getSize
+
+  } // inner class: LoadedResource
+
+
 } // class: LessFilter
\ No newline at end of file
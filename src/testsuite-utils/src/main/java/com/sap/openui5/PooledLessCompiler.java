@@ -0,0 +1,156 @@
+package com.sap.openui5;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URL;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The class <code>PooledLessCompiler</code> keeps a pool of independently
+ * initialized less.js instances (scopes) of a JavaScript engine so that
+ * different themes can be compiled in parallel. The pool grows on demand up
+ * to the max. number of scopes - afterwards the compilations wait until a
+ * scope is released.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ *
+ * @param <S> type of the scopes
+ */
+abstract class PooledLessCompiler<S> implements LessCompiler {
+
+
+  /** pool of the initialized scopes which are currently not in use */
+  private final BlockingQueue<S> scopes = new LinkedBlockingQueue<S>();
+
+  /** number of created scopes */
+  private final AtomicInteger scopeCount = new AtomicInteger();
+
+  /** max. number of scopes */
+  private final int poolSize;
+
+  /** the resource loader used by less.js to load the imports */
+  protected final Object resourceLoader;
+
+
+  /**
+   * constructs the class <code>PooledLessCompiler</code>
+   * @param poolSize max. number of scopes
+   * @param resourceLoader the resource loader used by less.js to load the imports (see less-api.js)
+   */
+  protected PooledLessCompiler(int poolSize, Object resourceLoader) {
+    this.poolSize = Math.max(1, poolSize);
+    this.resourceLoader = resourceLoader;
+  } // constructor
+
+
+  /**
+   * initializes the first scope (further scopes are created on demand)
+   * @throws IOException
+   */
+  void init() throws IOException {
+    this.scopeCount.incrementAndGet();
+    this.scopes.add(this.createScope());
+  } // method: init
+
+
+  /**
+   * creates a new scope and initializes less.js in it
+   * @return the scope
+   * @throws IOException
+   */
+  protected abstract S createScope() throws IOException;
+
+
+  /**
+   * compiles the CSS, RTL-CSS and theme parameters as JSON in the given scope
+   * @param scope the scope
+   * @param input less input
+   * @param path source path
+   * @param compressCSS true, if CSS should be compressed
+   * @param compressJSON true if JSON should be compressed
+   * @param libraryName name of the library
+   * @return the result of the compilation
+   * @throws IOException
+   */
+  protected abstract Result compile(S scope, String input, String path, boolean compressCSS, boolean compressJSON, String libraryName) throws IOException;
+
+
+  /**
+   * opens a reader for the less.js script
+   * @param script name of the script
+   * @return the reader
+   * @throws IOException
+   */
+  protected static Reader openScript(String script) throws IOException {
+    URL url = PooledLessCompiler.class.getClassLoader().getResource(LESS_PATH + script);
+    if (url == null) {
+      throw new IOException("The script " + script + " cannot be found!");
+    }
+    return new InputStreamReader(url.openStream(), "UTF-8");
+  } // method: openScript
+
+
+  /* (non-Javadoc)
+   * @see com.sap.openui5.LessCompiler#compile(java.lang.String, java.lang.String, boolean, boolean, java.lang.String)
+   */
+  @Override
+  public Result compile(String input, String path, boolean compressCSS, boolean compressJSON, String libraryName) throws IOException {
+    S scope = this.acquireScope();
+    try {
+      return this.compile(scope, input, path, compressCSS, compressJSON, libraryName);
+    } finally {
+      this.scopes.add(scope);
+    }
+  } // method: compile
+
+
+  /**
+   * acquires a scope from the pool - a new scope is created if all scopes
+   * are in use and the max. number of scopes is not reached yet, otherwise
+   * it waits until a scope is released
+   * @return the scope
+   * @throws IOException
+   */
+  private S acquireScope() throws IOException {
+    S scope = this.scopes.poll();
+    if (scope == null) {
+      if (this.scopeCount.incrementAndGet() <= this.poolSize) {
+        boolean created = false;
+        try {
+          scope = this.createScope();
+          created = true;
+        } finally {
+          if (!created) {
+            this.scopeCount.decrementAndGet();
+          }
+        }
+      } else {
+        this.scopeCount.decrementAndGet();
+        try {
+          scope = this.scopes.take();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for a LESS compiler!");
+        }
+      }
+    }
+    return scope;
+  } // method: acquireScope
+
+
+  /* (non-Javadoc)
+   * @see com.sap.openui5.LessCompiler#destroy()
+   */
+  @Override
+  public void destroy() {
+    this.scopes.clear();
+    this.scopeCount.set(0);
+  } // method: destroy
+
+
+} // class: PooledLessCompiler
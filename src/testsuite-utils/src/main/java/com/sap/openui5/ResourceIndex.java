@@ -0,0 +1,279 @@
+package com.sap.openui5;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javax.servlet.ServletContext;
+
+
+/**
+ * The class <code>ResourceIndex</code> is used to look up the resources
+ * located in the <code>META-INF/resources</code> and <code>META-INF/test-resources</code>
+ * path of the JARs in the classpath. Instead of asking the classloaders for
+ * each request (which scans all JARs of the classpath one after another) the
+ * entries of the JARs are indexed once so that a lookup is a simple map access.
+ * <p>
+ * Classpath folders (e.g. of projects in the IDE) are not indexed as their
+ * content can change - they are checked in the file system while keeping the
+ * order of the classpath. Other kind of classpath roots are not supported by
+ * the index - in this case the classloaders are used as fallback.
+ * <p>
+ * The index is shared by the <code>ResourceServlet</code>, the <code>ConcatFilter</code>
+ * and the <code>LessFilter</code> via the <code>ServletContext</code>.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+final class ResourceIndex {
+
+
+  /** default prefix for the classpath */
+  private static final String CLASSPATH_PREFIX = "META-INF";
+
+  /** paths in the classpath which are indexed */
+  private static final String[] INDEXED_PATHS = { "/resources/", "/test-resources/" };
+
+  /** resources used to determine the roots of the classpath */
+  private static final String[] ROOT_RESOURCES = { CLASSPATH_PREFIX + "/resources", CLASSPATH_PREFIX + "/test-resources", CLASSPATH_PREFIX + "/MANIFEST.MF" };
+
+
+  /** the classloaders to lookup the resources (in lookup order) */
+  private final List<ClassLoader> classLoaders = new ArrayList<ClassLoader>();
+
+  /** the classpath folders (in classpath order) */
+  private final List<Root> folders = new ArrayList<Root>();
+
+  /** index of the JAR entries (path --> first JAR in the classpath containing the path) */
+  private final Map<String, Root> entries = new HashMap<String, Root>();
+
+  /** flag, whether all classpath roots are covered by the index or not */
+  private boolean complete = true;
+
+
+  /**
+   * returns the instance of the <code>ResourceIndex</code> from the <code>ServletContext</code>
+   * and creates it initially (which builds the index of the JARs in the classpath)
+   * @param context the <code>ServletContext</code>
+   * @return the <code>ResourceIndex</code>
+   */
+  static ResourceIndex getInstance(ServletContext context) {
+    synchronized (ResourceIndex.class) {
+      ResourceIndex index = (ResourceIndex) context.getAttribute(ResourceIndex.class.getName());
+      if (index == null) {
+        long millis = System.currentTimeMillis();
+        index = new ResourceIndex(Thread.currentThread().getContextClassLoader(), ResourceIndex.class.getClassLoader());
+        context.log("ResourceIndex: Indexing " + index.entries.size() + " classpath resources took: " + (System.currentTimeMillis() - millis) + "ms");
+        context.setAttribute(ResourceIndex.class.getName(), index);
+      }
+      return index;
+    }
+  } // method: getInstance
+
+
+  /**
+   * constructs the class <code>ResourceIndex</code> and indexes the resources
+   * of the given classloaders
+   * @param loaders classloaders to index (in lookup order)
+   */
+  ResourceIndex(ClassLoader... loaders) {
+
+    // determine the roots of the classpath (JARs and folders) in classpath order
+    Set<String> rootUrls = new LinkedHashSet<String>();
+    for (ClassLoader loader : loaders) {
+      if (loader != null && !this.classLoaders.contains(loader)) {
+        this.classLoaders.add(loader);
+        for (String resource : ROOT_RESOURCES) {
+          try {
+            Enumeration<URL> urls = loader.getResources(resource);
+            while (urls.hasMoreElements()) {
+              String url = urls.nextElement().toString();
+              rootUrls.add(url.substring(0, url.length() - resource.length()));
+            }
+          } catch (IOException ex) {
+            throw new RuntimeException("Scan for classpath roots failed!", ex);
+          }
+        }
+      }
+    }
+
+    // index the JARs and keep the folders
+    int position = 0;
+    for (String rootUrl : rootUrls) {
+      try {
+        Root root = new Root(position++, rootUrl);
+        URLConnection connection = new URL(rootUrl).openConnection();
+        if (connection instanceof JarURLConnection) {
+          JarFile jar = ((JarURLConnection) connection).getJarFile();
+          Enumeration<JarEntry> jarEntries = jar.entries();
+          while (jarEntries.hasMoreElements()) {
+            JarEntry entry = jarEntries.nextElement();
+            String name = entry.getName();
+            if (!entry.isDirectory() && isIndexedPath(name, CLASSPATH_PREFIX.length())) {
+              String path = name.substring(CLASSPATH_PREFIX.length());
+              if (!this.entries.containsKey(path)) {
+                this.entries.put(path, root);
+              }
+            }
+          }
+        } else if ("file".equals(connection.getURL().getProtocol())) {
+          root.folder = new File(connection.getURL().toURI());
+          this.folders.add(root);
+        } else {
+          this.complete = false;
+        }
+      } catch (IOException ex) {
+        throw new RuntimeException("Indexing classpath root " + rootUrl + " failed!", ex);
+      } catch (URISyntaxException ex) {
+        // folder cannot be resolved => lookup via classloader
+        this.complete = false;
+      }
+    }
+
+  } // constructor
+
+
+  /**
+   * checks whether the path starting at the given offset is part of the index
+   * @param path the path
+   * @param offset the offset
+   * @return true, if the path is part of the index
+   */
+  private static boolean isIndexedPath(String path, int offset) {
+    for (String indexedPath : INDEXED_PATHS) {
+      if (path.startsWith(indexedPath, offset)) {
+        return true;
+      }
+    }
+    return false;
+  } // method: isIndexedPath
+
+
+  /**
+   * finds the resource for the given path in the classpath
+   * @param path path of the resource (without META-INF prefix)
+   * @return URL to the resource or null
+   * @throws MalformedURLException
+   */
+  URL findResource(String path) throws MalformedURLException {
+
+    // the index only covers the resources and test-resources
+    if (!isIndexedPath(path, 0)) {
+      return this.getClassLoaderResource(path);
+    }
+
+    // classpath folders located before the indexed JAR take precedence
+    Root jar = this.entries.get(path);
+    int position = jar != null ? jar.position : Integer.MAX_VALUE;
+    for (int i = 0, l = this.folders.size(); i < l; i++) {
+      Root folder = this.folders.get(i);
+      if (folder.position > position) {
+        break;
+      }
+      File file = new File(folder.folder, CLASSPATH_PREFIX + path);
+      if (file.isFile()) {
+        return file.toURI().toURL();
+      }
+    }
+
+    if (jar != null) {
+      return new URL(jar.url + CLASSPATH_PREFIX + path);
+    } else if (!this.complete) {
+      return this.getClassLoaderResource(path);
+    } else {
+      return null;
+    }
+
+  } // method: findResource
+
+
+  /**
+   * lists the resources in the classpath below the given path (resources of
+   * the classpath roots which are not supported by the index are not listed)
+   * @param path path of the folder (without META-INF prefix and with trailing slash)
+   * @return set of resource paths
+   */
+  Set<String> listResources(String path) {
+    Set<String> resources = new TreeSet<String>();
+    for (String entry : this.entries.keySet()) {
+      if (entry.startsWith(path)) {
+        resources.add(entry);
+      }
+    }
+    for (Root folder : this.folders) {
+      listFolder(new File(folder.folder, CLASSPATH_PREFIX + path), path, resources);
+    }
+    return resources;
+  } // method: listResources
+
+
+  /**
+   * lists the files of the folder (incl. subfolders)
+   * @param folder the folder
+   * @param path path of the folder
+   * @param resources set of found resource paths
+   */
+  private static void listFolder(File folder, String path, Set<String> resources) {
+    File[] files = folder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory()) {
+          listFolder(file, path + file.getName() + "/", resources);
+        } else {
+          resources.add(path + file.getName());
+        }
+      }
+    }
+  } // method: listFolder
+
+
+  /**
+   * finds the resource for the given path by using the classloaders
+   * @param path path of the resource (without META-INF prefix)
+   * @return URL to the resource or null
+   */
+  private URL getClassLoaderResource(String path) {
+    URL url = null;
+    for (int i = 0, l = this.classLoaders.size(); url == null && i < l; i++) {
+      url = this.classLoaders.get(i).getResource(CLASSPATH_PREFIX + path);
+    }
+    return url;
+  } // method: getClassLoaderResource
+
+
+  /**
+   * The class <code>Root</code> represents a JAR or a folder of the classpath.
+   */
+  static class Root {
+
+    /** position in the classpath */
+    final int position;
+
+    /** base URL of the root */
+    final String url;
+
+    /** the folder in the file system (only for folders) */
+    File folder;
+
+    Root(int position, String url) {
+      this.position = position;
+      this.url = url;
+    } // constructor
+
+  } // inner class: Root
+
+
+} // class: ResourceIndex
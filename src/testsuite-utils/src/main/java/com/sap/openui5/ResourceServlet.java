@@ -1,6 +1,7 @@
 package com.sap.openui5;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -9,7 +10,12 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,9 +43,6 @@ public class ResourceServlet extends HttpServlet {
   /** serial version UID */
   private static final long serialVersionUID = -13060227690820674L;
 
-  /** default prefix for the classpath */
-  private static final String CLASSPATH_PREFIX = "META-INF";
-
   /** name of the base theme */
   private static final String BASE_THEME_NAME = "base";
 
@@ -50,6 +53,101 @@ public class ResourceServlet extends HttpServlet {
   private static final Pattern PATTERN_PROPERTIES_REQUEST = Pattern.compile("(.*/)([^_]*)(_[^_]*)?(_.*)?\\.properties");
 
 
+  /** init parameter for the max. number of cached resource lookups (0 disables the cache) */
+  private static final String INIT_PARAM_CACHE_SIZE = ResourceServlet.class.getName() + ".CACHE_SIZE";
+
+  /** init parameter for the time to live (in ms) of lookups which cannot be validated by a file timestamp */
+  private static final String INIT_PARAM_CACHE_TTL = ResourceServlet.class.getName() + ".CACHE_TTL";
+
+  /** default max. number of cached resource lookups */
+  private static final int DEFAULT_CACHE_SIZE = 10000;
+
+  /** default time to live (in ms) of lookups which cannot be validated by a file timestamp */
+  private static final long DEFAULT_CACHE_TTL = 5000;
+
+  /** max. number of ranges of a range request (otherwise the whole content is returned) */
+  private static final int MAX_RANGES = 16;
+
+  /** content encodings of the precompressed variants (in order of preference) */
+  private static final String[] VARIANT_ENCODINGS = { "br", "gzip" };
+
+  /** file extensions of the precompressed variants (same order as the content encodings) */
+  private static final String[] VARIANT_EXTENSIONS = { ".br", ".gz" };
+
+
+  /** cache for the resolved resources (request path --> lookup result incl. not found) */
+  private LRUCache<String, ResourceLookup> lookupCache;
+
+  /** cache for the resource information of non-JAR resources (URL --> resource information incl. content hash) */
+  private LRUCache<String, ResourceInfo> infoCache;
+
+  /** time to live (in ms) of lookups which cannot be validated by a file timestamp */
+  private long lookupTimeToLive;
+
+  /** index of the classpath resources */
+  private ResourceIndex index;
+
+  /** content encoding support (incl. cache for compressed variants) */
+  private ContentEncoding contentEncoding;
+
+
+  /* (non-Javadoc)
+   * @see javax.servlet.GenericServlet#init()
+   */
+  @Override
+  public void init() throws ServletException {
+
+    // index the classpath resources
+    this.index = ResourceIndex.getInstance(this.getServletContext());
+
+    // the content encoding support
+    this.contentEncoding = ContentEncoding.getInstance(this.getServletContext());
+
+    // create the cache for the resource lookups
+    int cacheSize = Integer.parseInt(this.getParameter(INIT_PARAM_CACHE_SIZE, String.valueOf(DEFAULT_CACHE_SIZE)));
+    if (cacheSize > 0) {
+      this.lookupCache = new LRUCache<String, ResourceLookup>(cacheSize);
+      this.infoCache = new LRUCache<String, ResourceInfo>(cacheSize);
+    }
+    this.lookupTimeToLive = Long.parseLong(this.getParameter(INIT_PARAM_CACHE_TTL, String.valueOf(DEFAULT_CACHE_TTL)));
+
+  } // method: init
+
+
+  /* (non-Javadoc)
+   * @see javax.servlet.GenericServlet#destroy()
+   */
+  @Override
+  public void destroy() {
+    if (this.lookupCache != null) {
+      this.lookupCache.clear();
+      this.lookupCache = null;
+    }
+    if (this.infoCache != null) {
+      this.infoCache.clear();
+      this.infoCache = null;
+    }
+    this.index = null;
+    this.contentEncoding = null;
+  } // method: destroy
+
+
+  /**
+   * returns the value of the servlet init parameter or as fallback the
+   * value of the context init parameter
+   * @param name name of the parameter
+   * @param defaultValue default value if the parameter is not defined
+   * @return value of the parameter
+   */
+  private String getParameter(String name, String defaultValue) {
+    String value = this.getInitParameter(name);
+    if (value == null) {
+      value = this.getServletContext().getInitParameter(name);
+    }
+    return value != null ? value : defaultValue;
+  } // method: getParameter
+
+
   /* (non-Javadoc)
    * @see javax.servlet.http.HttpServlet#service(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
    */
@@ -78,11 +176,45 @@ public class ResourceServlet extends HttpServlet {
           conn.connect();
           is = conn.getInputStream();
 
-          this.prepareResponse(response, conn);
+          ResourceInfo info = this.getResourceInfo(conn);
+          String contentType = this.prepareResponse(response, conn, info);
+          boolean compressible = ContentEncoding.isCompressible(contentType);
+          if (compressible) {
+            response.setHeader("Vary", "Accept-Encoding");
+          }
+
+          // check the conditional request headers (ETag / last modified)
+          if (ConditionalRequests.isNotModified(request, info.etag, info.lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            this.log("[304] " + request.getRequestURI());
+            return;
+          }
+
+          // check for a range request (only for GET and if the length is known)
+          if ("GET".equals(method) && info.length >= 0 && request.getHeader("Range") != null &&
+              ConditionalRequests.isRangeApplicable(request, info.etag, info.lastModified)) {
+            List<long[]> ranges = parseRanges(request.getHeader("Range"), info.length);
+            if (ranges != null) {
+              this.serveRanges(request, response, url, contentType, info.length, ranges);
+              return;
+            }
+          }
+
+          // compress the content if accepted by the client (either by serving a
+          // precompressed variant or by compressing the content on the fly)
+          if (compressible && (info.length == -1 || info.length >= ContentEncoding.MIN_LENGTH) &&
+              this.serveEncoded(request, response, method, url, is, info)) {
+            return;
+          }
+
+          if (info.length >= 0) {
+            response.setHeader("Accept-Ranges", "bytes");
+            response.setHeader("Content-Length", String.valueOf(info.length));
+          }
 
           if ("GET".equals(method)) {
             OutputStream os = response.getOutputStream();
-            IOUtils.copyLarge(is, os);
+            BufferPool.copy(is, os);
             os.flush();
             os.close();
           }
@@ -104,13 +236,407 @@ public class ResourceServlet extends HttpServlet {
   } // method: service
 
 
+  /**
+   * serves the compressed content of the resource if the client accepts
+   * the content encoding. Precompressed variants (<code>.br</code> or
+   * <code>.gz</code> files next to the resource) are preferred and otherwise
+   * the content is compressed with gzip on the fly (the compressed content
+   * is cached).
+   * @param request request object
+   * @param response response object
+   * @param method the request method
+   * @param url URL of the resource
+   * @param is input stream of the resource
+   * @param info resource information
+   * @return true, if the compressed content has been served
+   * @throws IOException
+   */
+  private boolean serveEncoded(HttpServletRequest request, HttpServletResponse response, String method, URL url, InputStream is, ResourceInfo info) throws IOException {
+
+    // lookup the precompressed variants
+    for (int i = 0; i < VARIANT_ENCODINGS.length; i++) {
+      String encoding = VARIANT_ENCODINGS[i];
+      if (ContentEncoding.accepts(request, encoding)) {
+        URL variantUrl = this.findVariant(url, VARIANT_EXTENSIONS[i]);
+        if (variantUrl != null) {
+          InputStream vis = null;
+          try {
+            URLConnection conn = variantUrl.openConnection();
+            conn.connect();
+            vis = conn.getInputStream();
+            // outdated variants are ignored
+            ResourceInfo variantInfo = this.getResourceInfo(conn);
+            if (variantInfo.lastModified >= info.lastModified) {
+              this.prepareEncodedResponse(response, encoding, info.etag, variantInfo.length);
+              if ("GET".equals(method)) {
+                OutputStream os = response.getOutputStream();
+                BufferPool.copy(vis, os);
+                os.flush();
+                os.close();
+              }
+              response.setStatus(HttpServletResponse.SC_OK);
+              this.log("[200] " + request.getRequestURI() + " (" + encoding + ")");
+              return true;
+            }
+          } finally {
+            IOUtils.closeQuietly(vis);
+          }
+        }
+      }
+    }
+
+    // compress the content on the fly
+    if (ContentEncoding.accepts(request, "gzip")) {
+      byte[] compressed = this.contentEncoding.gzip(url.toString(), info.lastModified, is);
+      this.prepareEncodedResponse(response, "gzip", info.etag, compressed.length);
+      if ("GET".equals(method)) {
+        OutputStream os = response.getOutputStream();
+        os.write(compressed);
+        os.flush();
+        os.close();
+      }
+      response.setStatus(HttpServletResponse.SC_OK);
+      this.log("[200] " + request.getRequestURI() + " (gzip)");
+      return true;
+    }
+
+    return false;
+
+  } // method: serveEncoded
+
+
+  /**
+   * sets the response headers for the compressed content
+   * @param response response object
+   * @param encoding the content encoding
+   * @param etag the ETag of the uncompressed content or null
+   * @param length length of the compressed content or -1
+   */
+  private void prepareEncodedResponse(HttpServletResponse response, String encoding, String etag, long length) {
+    response.setHeader("Content-Encoding", encoding);
+    if (etag != null) {
+      response.setHeader("ETag", ContentEncoding.toWeakETag(etag));
+    }
+    if (length >= 0) {
+      response.setHeader("Content-Length", String.valueOf(length));
+    }
+  } // method: prepareEncodedResponse
+
+
+  /**
+   * finds the precompressed variant of the resource (the lookup result is
+   * cached like the lookup of the resources)
+   * @param url URL of the resource
+   * @param extension file extension of the variant
+   * @return URL of the variant or null
+   * @throws MalformedURLException
+   */
+  private URL findVariant(URL url, String extension) throws MalformedURLException {
+
+    URL variantUrl = new URL(url.toString() + extension);
+    String key = variantUrl.toString();
+
+    // check the cache for a valid lookup result
+    LRUCache<String, ResourceLookup> cache = this.lookupCache;
+    if (cache != null) {
+      ResourceLookup lookup = cache.get(key);
+      if (lookup != null && lookup.isValid()) {
+        return lookup.url;
+      }
+    }
+
+    // check the existence of the variant
+    boolean exists;
+    if ("file".equals(variantUrl.getProtocol())) {
+      File file = getSourceFile(variantUrl);
+      exists = file != null && file.isFile();
+    } else {
+      InputStream is = null;
+      try {
+        URLConnection conn = variantUrl.openConnection();
+        conn.connect();
+        is = conn.getInputStream();
+        exists = true;
+      } catch (IOException ex) {
+        exists = false;
+      } finally {
+        IOUtils.closeQuietly(is);
+      }
+    }
+
+    // cache the lookup result
+    if (!exists) {
+      variantUrl = null;
+    }
+    if (cache != null) {
+      File source = exists ? getSourceFile(variantUrl) : null;
+      cache.put(key, new ResourceLookup(variantUrl, source, source == null ? System.currentTimeMillis() + this.lookupTimeToLive : -1));
+    }
+
+    return variantUrl;
+
+  } // method: findVariant
+
+
+  /**
+   * writes the given range of the content of the resource into the output
+   * stream. Files are positioned directly at the start of the range and for
+   * other resources the bytes before the range are skipped.
+   * @param url URL of the resource
+   * @param os output stream of the response
+   * @param start start of the range
+   * @param length length of the range
+   * @throws IOException
+   */
+  private void writeRange(URL url, OutputStream os, long start, long length) throws IOException {
+    File file = "file".equals(url.getProtocol()) ? getSourceFile(url) : null;
+    InputStream is = null;
+    try {
+      if (file != null) {
+        FileInputStream fis = new FileInputStream(file);
+        is = fis;
+        fis.getChannel().position(start);
+        BufferPool.copy(fis, os, length);
+      } else {
+        is = url.openStream();
+        BufferPool.skip(is, start);
+        BufferPool.copy(is, os, length);
+      }
+    } finally {
+      IOUtils.closeQuietly(is);
+    }
+  } // method: writeRange
+
+
+  /**
+   * serves the ranges of the resource as partial content (a single range
+   * is returned directly and multiple ranges as multipart/byteranges)
+   * @param request request object
+   * @param response response object
+   * @param url URL of the resource
+   * @param contentType content type of the resource
+   * @param length length of the resource
+   * @param ranges list of ranges (start and end position)
+   * @throws IOException
+   */
+  private void serveRanges(HttpServletRequest request, HttpServletResponse response, URL url, String contentType, long length, List<long[]> ranges) throws IOException {
+
+    // none of the ranges can be satisfied
+    if (ranges.isEmpty()) {
+      response.setHeader("Content-Range", "bytes */" + length);
+      response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      this.log("[416] " + request.getRequestURI());
+      return;
+    }
+
+    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    response.setHeader("Accept-Ranges", "bytes");
+
+    if (ranges.size() == 1) {
+
+      // a single range is returned as is
+      long[] range = ranges.get(0);
+      response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+      response.setHeader("Content-Length", String.valueOf(range[1] - range[0] + 1));
+      OutputStream os = response.getOutputStream();
+      this.writeRange(url, os, range[0], range[1] - range[0] + 1);
+      os.flush();
+      os.close();
+
+    } else {
+
+      // multiple ranges are returned as multipart/byteranges
+      String boundary = "UI5_BYTERANGES_" + Long.toHexString(System.nanoTime());
+      List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+      long contentLength = 0;
+      for (long[] range : ranges) {
+        byte[] partHeader = ("\r\n--" + boundary + "\r\n" +
+          (contentType != null ? "Content-Type: " + contentType + "\r\n" : "") +
+          "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n").getBytes("ISO-8859-1");
+        partHeaders.add(partHeader);
+        contentLength += partHeader.length + range[1] - range[0] + 1;
+      }
+      byte[] closeDelimiter = ("\r\n--" + boundary + "--\r\n").getBytes("ISO-8859-1");
+      contentLength += closeDelimiter.length;
+
+      response.setContentType("multipart/byteranges; boundary=" + boundary);
+      response.setHeader("Content-Length", String.valueOf(contentLength));
+      OutputStream os = response.getOutputStream();
+      for (int i = 0, l = ranges.size(); i < l; i++) {
+        long[] range = ranges.get(i);
+        os.write(partHeaders.get(i));
+        this.writeRange(url, os, range[0], range[1] - range[0] + 1);
+      }
+      os.write(closeDelimiter);
+      os.flush();
+      os.close();
+
+    }
+
+    this.log("[206] " + request.getRequestURI());
+
+  } // method: serveRanges
+
+
+  /**
+   * parses the value of the <code>Range</code> header
+   * @param header value of the <code>Range</code> header
+   * @param length length of the resource
+   * @return list of satisfiable ranges (start and end position), empty if
+   *         none of the ranges is satisfiable or null if the header is invalid
+   *         (or contains too many ranges) and should be ignored
+   */
+  static List<long[]> parseRanges(String header, long length) {
+    if (!header.startsWith("bytes=")) {
+      return null;
+    }
+    String[] specs = header.substring("bytes=".length()).split(",");
+    if (specs.length > MAX_RANGES) {
+      return null;
+    }
+    List<long[]> ranges = new ArrayList<long[]>(specs.length);
+    try {
+      for (String spec : specs) {
+        spec = spec.trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+          return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        long start, end;
+        if (first.isEmpty()) {
+          // suffix range: last n bytes
+          long suffix = parsePosition(last);
+          if (suffix == 0) {
+            continue;
+          }
+          start = Math.max(0, length - suffix);
+          end = length - 1;
+        } else {
+          start = parsePosition(first);
+          end = length - 1;
+          if (!last.isEmpty()) {
+            long lastPosition = parsePosition(last);
+            if (lastPosition < start) {
+              return null;
+            }
+            end = Math.min(lastPosition, end);
+          }
+        }
+        if (start < length) {
+          ranges.add(new long[] { start, end });
+        }
+      }
+    } catch (NumberFormatException ex) {
+      return null;
+    }
+    return ranges;
+  } // method: parseRanges
+
+
+  /**
+   * parses a position of a range
+   * @param value the value to parse
+   * @return the position
+   * @throws NumberFormatException if the value is not a valid position
+   */
+  private static long parsePosition(String value) {
+    long position = Long.parseLong(value);
+    if (position < 0 || value.startsWith("+")) {
+      throw new NumberFormatException("Invalid range position: " + value);
+    }
+    return position;
+  } // method: parsePosition
+
+
+  /**
+   * determines the last modified timestamp, the length and the ETag of the
+   * resource. For JAR entries the timestamp and the CRC of the entry are used
+   * and for other resources the ETag is calculated from the content (the
+   * content hash is cached as long as the resource is not modified).
+   * @param conn URL connection of the content to return
+   * @return the resource information
+   * @throws IOException
+   */
+  private ResourceInfo getResourceInfo(URLConnection conn) throws IOException {
+
+    if (conn instanceof JarURLConnection) {
+
+      // for JAR files we use the information of the JAR entry
+      JarURLConnection jarConn = (JarURLConnection) conn;
+      JarEntry entry = jarConn.getJarEntry();
+      long lastModified = entry.getTime();
+      if (lastModified == -1) {
+        lastModified = new File(jarConn.getJarFile().getName()).lastModified();
+      }
+      String etag = entry.getCrc() != -1 ? "\"" + Long.toHexString(entry.getCrc()) + "-" + Long.toHexString(entry.getSize()) + "\"" : null;
+      return new ResourceInfo(lastModified, entry.getSize(), etag);
+
+    } else {
+
+      // for other resources the content hash is used as ETag
+      long lastModified = conn.getLastModified();
+      long length = conn.getContentLength();
+      String url = conn.getURL().toString();
+      LRUCache<String, ResourceInfo> cache = this.infoCache;
+      ResourceInfo info = cache != null ? cache.get(url) : null;
+      if (info == null || info.lastModified != lastModified || info.length != length) {
+        String etag = null;
+        if (lastModified > 0) {
+          if (cache != null) {
+            etag = "\"" + this.getContentHash(conn.getURL()) + "\"";
+          } else {
+            etag = "W/\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+          }
+        }
+        info = new ResourceInfo(lastModified, length, etag);
+        if (cache != null && etag != null) {
+          cache.put(url, info);
+        }
+      }
+      return info;
+
+    }
+
+  } // method: getResourceInfo
+
+
+  /**
+   * calculates the hash of the content of the resource
+   * @param url URL of the resource
+   * @return the hash of the content as hex string
+   * @throws IOException
+   */
+  private String getContentHash(URL url) throws IOException {
+    InputStream is = null;
+    byte[] buffer = BufferPool.acquire();
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      is = url.openStream();
+      int n;
+      while ((n = is.read(buffer)) != -1) {
+        digest.update(buffer, 0, n);
+      }
+      return ConditionalRequests.toHex(digest.digest());
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IOException("Failed to calculate the content hash for " + url, ex);
+    } finally {
+      BufferPool.release(buffer);
+      IOUtils.closeQuietly(is);
+    }
+  } // method: getContentHash
+
+
   /**
    * prepares the response and sets the response headers properly
    * @param response response object
    * @param conn URL connection of the content to return
+   * @param info resource information (last modified, ETag)
+   * @return the content type
    * @throws IOException
    */
-  private void prepareResponse(HttpServletResponse response, URLConnection conn) throws IOException {
+  private String prepareResponse(HttpServletResponse response, URLConnection conn, ResourceInfo info) throws IOException {
 
     String url = conn.getURL().toString();
 
@@ -124,64 +650,41 @@ public class ResourceServlet extends HttpServlet {
       }
     }
 
-    // determine the last modified timestamp
-    long lastModified;
-    // for JAR files we do not open the connection to avoid resource leaks!
-    if (conn instanceof JarURLConnection) {
-      File jarFile = new File(((JarURLConnection) conn).getJarFile().getName());
-      lastModified = jarFile.lastModified();
-    } else {
-      lastModified = conn.getLastModified();
-    }
-
-    // set the relevant headers (content type, last modified, resource location, ...)
+    // set the relevant headers (content type, last modified, ETag, resource location, ...)
     response.setContentType(contentType);
-    response.addDateHeader("Last-Modified", lastModified);
+    response.addDateHeader("Last-Modified", info.lastModified);
+    if (info.etag != null) {
+      response.setHeader("ETag", info.etag);
+    }
     response.addHeader("x-sap-ResourceUrl", url);
 
+    return contentType;
+
   } // method: prepareResponse
 
 
   /**
-   * finds the resource for the given path
+   * finds the resource for the given path (the lookup result is cached
+   * including the information that a resource doesn't exist)
    * @param path path of the resource
    * @return URL to the resource or null
    * @throws MalformedURLException
    */
   private URL findResource(String path) throws MalformedURLException {
 
-    // define the classpath for the classloader lookup
-    String classPath = CLASSPATH_PREFIX + path;
-
-    // first lookup the resource in the web context path
-    URL url = this.getServletContext().getResource(path);
-
-    // lookup the resource in the current threads classloaders
-    if (url == null) {
-      url = Thread.currentThread().getContextClassLoader().getResource(classPath);
-    }
-
-    // lookup the resource in the local classloader
-    if (url == null) {
-      url = ResourceServlet.class.getClassLoader().getResource(classPath);
-    }
-
-    // make sure that also the file system URLs are handled case sensitive
-    // to have a similar behavior like the classloader (avoid case issues!)
-    if (url != null && "file".equals(url.getProtocol())) {
-      try {
-        File file = new File(url.toURI());
-        File folder = file.getParentFile();
-        if (folder != null && !Arrays.asList(folder.list()).contains(file.getName())) {
-          url = null;
-        }
-      } catch (URISyntaxException ex) {
-        // we just forward the exception as MalformedURLException
-        // but normally this issue will not happen here!
-        throw new MalformedURLException(ex.getMessage()); // NOSONAR
+    // check the cache for a valid lookup result
+    LRUCache<String, ResourceLookup> cache = this.lookupCache;
+    if (cache != null) {
+      ResourceLookup lookup = cache.get(path);
+      if (lookup != null && lookup.isValid()) {
+        return lookup.url;
       }
     }
 
+    // lookup the resource for the given path
+    URL url = this.lookupResource(path);
+    boolean exact = url != null;
+
     // theme fallback?
     if (url == null) {
       Matcher m = PATTERN_THEME_REQUEST.matcher(path);
@@ -204,11 +707,87 @@ public class ResourceServlet extends HttpServlet {
       }
     }
 
+    // cache the lookup result: exact matches are validated by the timestamp
+    // of the underlying file or JAR file, the other results (not found or
+    // resolved via fallback) expire once the time to live is exceeded as
+    // a more specific resource could be added in the meantime
+    if (cache != null) {
+      File source = exact ? getSourceFile(url) : null;
+      cache.put(path, new ResourceLookup(url, source, source == null ? System.currentTimeMillis() + this.lookupTimeToLive : -1));
+    }
+
     return url;
 
   } // method: findResource
 
 
+  /**
+   * looks up the resource for the given path in the web context and the
+   * classpath (without any fallback)
+   * @param path path of the resource
+   * @return URL to the resource or null
+   * @throws MalformedURLException
+   */
+  private URL lookupResource(String path) throws MalformedURLException {
+
+    // first lookup the resource in the web context path
+    URL url = this.getServletContext().getResource(path);
+
+    // lookup the resource in the classpath (current threads and local classloader)
+    if (url == null) {
+      url = this.index.findResource(path);
+    }
+
+    // make sure that also the file system URLs are handled case sensitive
+    // to have a similar behavior like the classloader (avoid case issues!)
+    if (url != null && "file".equals(url.getProtocol())) {
+      try {
+        File file = new File(url.toURI());
+        File folder = file.getParentFile();
+        if (folder != null && !Arrays.asList(folder.list()).contains(file.getName())) {
+          url = null;
+        }
+      } catch (URISyntaxException ex) {
+        // we just forward the exception as MalformedURLException
+        // but normally this issue will not happen here!
+        throw new MalformedURLException(ex.getMessage()); // NOSONAR
+      }
+    }
+
+    return url;
+
+  } // method: lookupResource
+
+
+  /**
+   * determines the file in the file system which contains the resource of
+   * the given URL (for JAR URLs this is the JAR file)
+   * @param url URL of the resource
+   * @return the file or null if the resource is not located in the file system
+   */
+  private static File getSourceFile(URL url) {
+    try {
+      if ("jar".equals(url.getProtocol())) {
+        String path = url.getPath();
+        int separator = path.indexOf("!/");
+        if (separator != -1) {
+          url = new URL(path.substring(0, separator));
+        }
+      }
+      if ("file".equals(url.getProtocol())) {
+        return new File(url.toURI());
+      }
+    } catch (MalformedURLException ex) {
+      // no source file available => lookup expires by time to live
+    } catch (URISyntaxException ex) {
+      // no source file available => lookup expires by time to live
+    } catch (IllegalArgumentException ex) {
+      // no source file available => lookup expires by time to live
+    }
+    return null;
+  } // method: getSourceFile
+
+
   /**
    * negotiates the theme request to the base theme
    * @param requestPath requested path
@@ -266,4 +845,68 @@ public class ResourceServlet extends HttpServlet {
   } // method: negotiatePropertiesRequest
 
 
+  /**
+   * The class <code>ResourceLookup</code> keeps the result of a resource
+   * lookup together with the information required to validate it.
+   */
+  static class ResourceLookup {
+
+    /** URL of the resource or null if not found */
+    final URL url;
+
+    /** file containing the resource (used to detect modifications) */
+    final File source;
+
+    /** last modified timestamp of the source file at lookup time */
+    final long sourceLastModified;
+
+    /** expiration timestamp (used if no source file is available) */
+    final long expires;
+
+    ResourceLookup(URL url, File source, long expires) {
+      this.url = url;
+      this.source = source;
+      this.sourceLastModified = source != null ? source.lastModified() : -1;
+      this.expires = expires;
+    } // constructor
+
+    /**
+     * checks whether the lookup result is still valid
+     * @return true, if the lookup result is still valid
+     */
+    boolean isValid() {
+      if (this.source != null) {
+        return this.source.lastModified() == this.sourceLastModified;
+      } else {
+        return System.currentTimeMillis() < this.expires;
+      }
+    } // method: isValid
+
+  } // inner class: ResourceLookup
+
+
+  /**
+   * The class <code>ResourceInfo</code> keeps the information of a resource
+   * which is relevant for the conditional requests.
+   */
+  static class ResourceInfo {
+
+    /** last modified timestamp */
+    final long lastModified;
+
+    /** length of the content or -1 if unknown */
+    final long length;
+
+    /** the ETag or null */
+    final String etag;
+
+    ResourceInfo(long lastModified, long length, String etag) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.etag = etag;
+    } // constructor
+
+  } // inner class: ResourceInfo
+
+
 } // class: ResourceServlet
\ No newline at end of file
@@ -1,22 +1,28 @@
 package com.sap.openui5;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TimeZone;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -27,10 +33,12 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 
 
 /**
@@ -40,18 +48,69 @@ import org.apache.commons.io.IOUtils;
  * values. Those values can be passed as filter init parameters
  * to the RewriteFilter. Defaults will be taken from a properties
  * file.
+ * <p>
+ * The responses are not buffered: once the content is written the filter
+ * decides by the content type whether the content is passed through to the
+ * client as is or whether it is rewritten (and compressed) on the fly. The
+ * request headers which are hidden from the downstream resources (e.g.
+ * <code>Range</code> or <code>Accept-Encoding</code>) are revealed once the
+ * response is passed through. Compressible content which is not rewritten is
+ * compressed by the filter if the <code>Accept-Encoding</code> header has
+ * already been hidden from the resource. Only
+ * a small window is kept for placeholders which span the written chunks.
+ * Small rewritten content is kept in pooled slabs to send it with its length.
+ * The placeholders are replaced on the bytes of the content with the values
+ * encoded once per charset (the content is not decoded). Resources which are
+ * never rewritten (e.g. images, fonts or archives according to the mime type
+ * of their path) or whose content type is neither rewritable nor compressible
+ * are not intercepted at all.
+ * <p>
+ * As the values of the properties don't change the rewritten content is
+ * cached by the request path and the identity of the resource (content type,
+ * <code>ETag</code> and <code>Last-Modified</code>). The cached content is
+ * validated by sending its <code>ETag</code> or <code>Last-Modified</code>
+ * timestamp as conditional headers so that the downstream resources don't
+ * need to be generated again. Content without any placeholders is passed
+ * through for the same identity. The size of the cache can be configured
+ * with the context init parameter <code>com.sap.openui5.RewriteFilter.CACHE_SIZE</code>
+ * (in bytes, 0 disables the cache).
  *
  * @author Peter Muessig
  */
 public class RewriteFilter implements Filter {
 
 
+  /** context init parameter for the max. size of the cache for rewritten content (in bytes, 0 disables the cache) */
+  private static final String INIT_PARAM_CACHE_SIZE = RewriteFilter.class.getName() + ".CACHE_SIZE";
+
+  /** default max. size of the cache for rewritten content (in bytes) */
+  private static final long DEFAULT_CACHE_SIZE = 32L * 1024 * 1024;
+
+  /** the charsets of the rewritten content */
+  private static final String[] CHARSETS = { "UTF-8", "ISO-8859-1" };
+
+  /** charset to convert the bytes of the placeholders into keys */
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+
   /** the filter configuration */
   private FilterConfig config;
 
   /** the map of properties to rewrite */
   private Map<String, String> properties;
 
+  /** the encoded values of the properties per charset (charset --> placeholder bytes as ISO-8859-1 string --> encoded value) */
+  private Map<String, Map<String, byte[]>> replacements;
+
+  /** content encoding support (incl. cache for compressed variants) */
+  private ContentEncoding contentEncoding;
+
+  /** cache for the rewritten content (request path --> rewritten response) or null */
+  private LRUCache<String, RewrittenResponse> cache;
+
+  /** max. size of rewritten content to be cached (in bytes) */
+  private long maxCacheEntrySize;
+
 
   /* (non-Javadoc)
    * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
@@ -59,6 +118,21 @@ public class RewriteFilter implements Filter {
   @Override
   public void init(FilterConfig config) throws ServletException {
     this.config = config;
+    this.contentEncoding = ContentEncoding.getInstance(config.getServletContext());
+
+    // the cache for the rewritten content (the init parameters of the filter
+    // are the properties to rewrite => the size is a context init parameter)
+    String cacheSize = config.getServletContext().getInitParameter(INIT_PARAM_CACHE_SIZE);
+    long maxCacheSize = cacheSize != null ? Long.parseLong(cacheSize) : DEFAULT_CACHE_SIZE;
+    if (maxCacheSize > 0) {
+      this.cache = new LRUCache<String, RewrittenResponse>(maxCacheSize, new LRUCache.Weigher<RewrittenResponse>() {
+        @Override
+        public long weigh(RewrittenResponse value) {
+          return value.content != null ? value.content.length : 1;
+        }
+      });
+      this.maxCacheEntrySize = maxCacheSize / 8;
+    }
 
     // create the properties map
     this.properties = new HashMap<String, String>();
@@ -85,6 +159,21 @@ public class RewriteFilter implements Filter {
       this.properties.put(initParamName, this.config.getInitParameter(initParamName));
     }
 
+    // encode the values of the properties once per charset: the placeholders
+    // are looked up by their bytes which are converted 1:1 into a string
+    this.replacements = new HashMap<String, Map<String, byte[]>>();
+    try {
+      for (String charset : CHARSETS) {
+        Map<String, byte[]> values = new HashMap<String, byte[]>();
+        for (Map.Entry<String, String> property : this.properties.entrySet()) {
+          values.put(new String(property.getKey().getBytes(charset), ISO_8859_1), property.getValue().getBytes(charset));
+        }
+        this.replacements.put(charset, values);
+      }
+    } catch (UnsupportedEncodingException ex) {
+      throw new ServletException("Failed to encode the rewrite properties!", ex);
+    }
+
   } // method: init
 
 
@@ -93,6 +182,10 @@ public class RewriteFilter implements Filter {
    */
   @Override
   public void destroy() {
+    if (this.cache != null) {
+      this.cache.clear();
+      this.cache = null;
+    }
     this.config = null;
   } // method: destroy
 
@@ -102,16 +195,188 @@ public class RewriteFilter implements Filter {
    */
   @Override
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
-    if (this.properties.size() > 0) {
-      ResponseWrapper wrapper = new ResponseWrapper((HttpServletResponse) response, ((HttpServletRequest) request).getPathInfo(), this.properties);
-      chain.doFilter(request, wrapper);
-      wrapper.pipe((HttpServletResponse) response);
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    if (this.properties.size() > 0 && isTextual(this.config.getServletContext().getMimeType(httpRequest.getRequestURI()))) {
+
+      // lookup the rewritten content of the resource in the cache
+      String cacheKey = null;
+      RewrittenResponse cached = null;
+      if (this.cache != null && "GET".equals(httpRequest.getMethod())) {
+        cacheKey = httpRequest.getRequestURI() + (httpRequest.getQueryString() != null ? "?" + httpRequest.getQueryString() : "");
+        cached = this.cache.get(cacheKey);
+      }
+
+      // the cached content is validated with conditional headers unless the
+      // client validates its own copy
+      boolean validate = cached != null && cached.content != null &&
+          httpRequest.getHeader("If-None-Match") == null && httpRequest.getHeader("If-Modified-Since") == null;
+
+      ResponseWrapper wrapper = new ResponseWrapper((HttpServletResponse) response, httpRequest, this, cacheKey, cached, validate);
+      try {
+        chain.doFilter(new RequestWrapper(httpRequest, validate ? cached : null, wrapper), wrapper);
+        wrapper.pipe();
+      } finally {
+        wrapper.release();
+      }
     } else {
       chain.doFilter(request, response);
     }
   } // method: doFilter
 
 
+  /**
+   * checks whether the mime type could be textual content which is rewritten
+   * (the content type of the response may differ from the mime type of the
+   * path, e.g. <code>text/javascript</code> or a charset parameter)
+   * @param mimeType the mime type of the requested path or null if unknown
+   * @return true, if the mime type is unknown or could be textual content
+   */
+  static boolean isTextual(String mimeType) {
+    if (mimeType == null) {
+      return true;
+    }
+    mimeType = mimeType.toLowerCase();
+    return mimeType.startsWith("text/") || mimeType.contains("javascript") || mimeType.contains("json") || mimeType.contains("xml");
+  } // method: isTextual
+
+
+  /**
+   * The class <b><code>RequestWrapper</code></b> is used to hide the request
+   * headers which would prevent that the full and uncompressed content is
+   * returned and can be rewritten (e.g. range requests or content encoding).
+   * The content is compressed by the filter if accepted by the client (also
+   * the content which is not rewritten). Once the response is passed through
+   * unwrapped the headers are no longer hidden.
+   * To validate cached rewritten content its <code>ETag</code> or
+   * <code>Last-Modified</code> timestamp is added as conditional header.
+   */
+  static class RequestWrapper extends HttpServletRequestWrapper {
+
+
+    /** headers which are blocked for the request */
+    private final static List<String> BLOCKED_HEADERS = Arrays.asList(new String[] {
+      "range", "if-range", "accept-encoding"
+    });
+
+
+    /** conditional headers to validate the cached rewritten content (lower case name --> value) */
+    private final Map<String, String> conditionalHeaders = new HashMap<String, String>();
+
+    /** value of the <code>If-Modified-Since</code> header to validate the cached rewritten content */
+    private long ifModifiedSince = -1;
+
+    /** the response of the request */
+    private final ResponseWrapper response;
+
+
+    /**
+     * constructs the class <code>RequestWrapper</code>
+     * @param request reference to the <code>HttpServletRequest</code>
+     * @param cached the cached rewritten response to validate or null
+     * @param response the response of the request
+     */
+    RequestWrapper(HttpServletRequest request, RewrittenResponse cached, ResponseWrapper response) {
+      super(request);
+      this.response = response;
+      if (cached != null) {
+        if (cached.etag != null) {
+          this.conditionalHeaders.put("if-none-match", cached.etag);
+        } else if (cached.lastModified > 0) {
+          SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+          format.setTimeZone(TimeZone.getTimeZone("GMT"));
+          this.conditionalHeaders.put("if-modified-since", format.format(new Date(cached.lastModified)));
+          this.ifModifiedSince = cached.lastModified;
+        }
+      }
+    } // constructor
+
+
+    /**
+     * checks whether the header is blocked (as long as the response is not
+     * passed through unwrapped)
+     * @param name header name
+     * @return true, if the header is blocked
+     */
+    private boolean isBlocked(String name) {
+      if (name == null || this.response.unwrapped || !BLOCKED_HEADERS.contains(name.toLowerCase())) {
+        return false;
+      }
+      // the content of the resource has to be compressed by the filter
+      if ("accept-encoding".equalsIgnoreCase(name)) {
+        this.response.encodingHidden = true;
+      }
+      return true;
+    } // method: isBlocked
+
+
+    /* (non-Javadoc)
+     * @see javax.servlet.http.HttpServletRequestWrapper#getHeader(java.lang.String)
+     */
+    @Override
+    public String getHeader(String name) {
+      if (name != null && this.conditionalHeaders.containsKey(name.toLowerCase())) {
+        return this.conditionalHeaders.get(name.toLowerCase());
+      }
+      return this.isBlocked(name) ? null : super.getHeader(name);
+    } // method: getHeader
+
+
+    /* (non-Javadoc)
+     * @see javax.servlet.http.HttpServletRequestWrapper#getHeaders(java.lang.String)
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Enumeration getHeaders(String name) {
+      if (name != null && this.conditionalHeaders.containsKey(name.toLowerCase())) {
+        return Collections.enumeration(Collections.singletonList(this.conditionalHeaders.get(name.toLowerCase())));
+      }
+      return this.isBlocked(name) ? Collections.enumeration(Collections.emptyList()) : super.getHeaders(name);
+    } // method: getHeaders
+
+
+    /* (non-Javadoc)
+     * @see javax.servlet.http.HttpServletRequestWrapper#getHeaderNames()
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Enumeration getHeaderNames() {
+      List<String> names = new ArrayList<String>();
+      Enumeration<?> en = super.getHeaderNames();
+      while (en != null && en.hasMoreElements()) {
+        String name = (String) en.nextElement();
+        if (!this.isBlocked(name)) {
+          names.add(name);
+        }
+      }
+      names.addAll(this.conditionalHeaders.keySet());
+      return Collections.enumeration(names);
+    } // method: getHeaderNames
+
+
+    /* (non-Javadoc)
+     * @see javax.servlet.http.HttpServletRequestWrapper#getDateHeader(java.lang.String)
+     */
+    @Override
+    public long getDateHeader(String name) {
+      if ("if-modified-since".equalsIgnoreCase(name) && this.ifModifiedSince != -1) {
+        return this.ifModifiedSince;
+      }
+      return this.isBlocked(name) ? -1 : super.getDateHeader(name);
+    } // method: getDateHeader
+
+
+    /* (non-Javadoc)
+     * @see javax.servlet.http.HttpServletRequestWrapper#getIntHeader(java.lang.String)
+     */
+    @Override
+    public int getIntHeader(String name) {
+      return this.isBlocked(name) ? -1 : super.getIntHeader(name);
+    } // method: getIntHeader
+
+
+  } // inner class: RequestWrapper
+
+
   /**
    * The class <b><code>ResponseWrapper</code></b> is used to intercept the response.
    */
@@ -123,21 +388,51 @@ public class RewriteFilter implements Filter {
       "application/javascript", "application/json", "application/xml", "text/plain", "text/css", "text/html"
     });
 
-    /** headers which are blocked for the response */
+    /** headers which are blocked for the rewritten responses */
     private final static List<String> BLOCKED_HEADERS = Arrays.asList(new String[] {
       "content-length", "transfer-encoding"
     });
 
 
+    /** the request */
+    private HttpServletRequest request;
+
     /** the path of the requested resource */
     private String requestPath;
 
-    /** the map of properties to rewrite */
-    private Map<String, String> properties;
+    /** the filter (incl. content encoding support and the cache) */
+    private RewriteFilter filter;
+
+    /** key of the rewritten content in the cache or null if not cacheable */
+    private String cacheKey;
+
+    /** the cached rewritten response or null */
+    private RewrittenResponse cached;
+
+    /** flag whether the cached rewritten content is validated with conditional headers */
+    private boolean validate;
+
+    /** the stream rewriting the content or null */
+    private RewriteOutputStream rewriter;
+
+    /** the stream capturing the rewritten content for the cache or null */
+    private CaptureOutputStream capture;
+
+    /** the stream buffering small content to determine its length or null */
+    private ContentLengthOutputStream buffer;
+
+    /** identity of the resource (content type, ETag and Last-Modified) or null */
+    private String identity;
+
+    /** flag whether the response is passed through unwrapped (content type is not rewritable) */
+    private boolean unwrapped;
+
+    /** flag whether the <code>Accept-Encoding</code> header has been hidden from the resource */
+    private boolean encodingHidden;
 
 
     /** the stream */
-    private ResponseWrapperOutputStream stream = new ResponseWrapperOutputStream();
+    private ResponseWrapperOutputStream stream = new ResponseWrapperOutputStream(this);
 
     /** set of cookies */
     private Set<Cookie> cookies = new HashSet<Cookie>();
@@ -158,13 +453,20 @@ public class RewriteFilter implements Filter {
     /**
      * constructs the class <code>CacheResponseWrapper</code>
      * @param response reference to the <code>HttpServletResponse</code>
-     * @param requestPath the path of the requested resource
-     * @param properties the map of properties to rewrite
+     * @param request reference to the <code>HttpServletRequest</code>
+     * @param filter the filter (incl. the properties to rewrite and the cache)
+     * @param cacheKey key of the rewritten content in the cache or null if not cacheable
+     * @param cached the cached rewritten response or null
+     * @param validate true, if the cached rewritten content is validated with conditional headers
      */
-    ResponseWrapper(HttpServletResponse response, String requestPath, Map<String, String> properties) {
+    ResponseWrapper(HttpServletResponse response, HttpServletRequest request, RewriteFilter filter, String cacheKey, RewrittenResponse cached, boolean validate) {
       super(response);
-      this.requestPath = requestPath;
-      this.properties = properties;
+      this.request = request;
+      this.requestPath = request.getPathInfo();
+      this.filter = filter;
+      this.cacheKey = cacheKey;
+      this.cached = cached;
+      this.validate = validate;
     } // constructor
 
 
@@ -194,9 +496,64 @@ public class RewriteFilter implements Filter {
     public void setContentType(String type) {
       super.setContentType(type);
       this.contentType = type;
+      // responses which are not rewritten are passed through unwrapped (unless
+      // the cached rewritten content is validated as the status must be mapped
+      // or the content needs to be compressed by the filter as the resource
+      // has already missed the Accept-Encoding header)
+      if (type != null && !this.unwrapped && !this.validate && !this.stream.isCommitted() &&
+          !this.isRewritable() && (!this.encodingHidden || !ContentEncoding.isCompressible(type))) {
+        this.unwrap();
+      }
     } // method: setContentType
 
 
+    /**
+     * passes the response through: the intercepted headers are applied to the
+     * real response and from now on all calls are delegated to it (and the
+     * hidden request headers are revealed to the resource)
+     */
+    private void unwrap() {
+      HttpServletResponse response = (HttpServletResponse) this.getResponse();
+      this.unwrapped = true;
+      for (Entry<String, List<Object>> header : this.headers.entrySet()) {
+        for (Object value : header.getValue()) {
+          this.applyHeader(response, header.getKey(), value, false);
+        }
+      }
+      this.headers.clear();
+    } // method: unwrap
+
+
+    /**
+     * applies the header value to the real response
+     * @param response the real response
+     * @param name header name
+     * @param value header value
+     * @param overwrite flag whether to overwrite the header values or not
+     */
+    private void applyHeader(HttpServletResponse response, String name, Object value, boolean overwrite) {
+      if (value instanceof Long) {
+        if (overwrite) {
+          response.setDateHeader(name, (Long) value);
+        } else {
+          response.addDateHeader(name, (Long) value);
+        }
+      } else if (value instanceof Integer) {
+        if (overwrite) {
+          response.setIntHeader(name, (Integer) value);
+        } else {
+          response.addIntHeader(name, (Integer) value);
+        }
+      } else {
+        if (overwrite) {
+          response.setHeader(name, value.toString());
+        } else {
+          response.addHeader(name, value.toString());
+        }
+      }
+    } // method: applyHeader
+
+
     /**
      * returns the status code for the request
      * @return status code
@@ -257,6 +614,10 @@ public class RewriteFilter implements Filter {
      * @param overwrite flag whether to overwrite the header values or not
      */
     private void addHeaderValue(String name, Object value, boolean overwrite) {
+      if (this.unwrapped) {
+        this.applyHeader((HttpServletResponse) this.getResponse(), name, value, overwrite);
+        return;
+      }
       List<Object> headerValues = this.headers.get(name);
       if (overwrite || headerValues == null) {
         headerValues = new ArrayList<Object>();
@@ -294,6 +655,15 @@ public class RewriteFilter implements Filter {
     } // method:
 
 
+    /* (non-Javadoc)
+     * @see javax.servlet.ServletResponseWrapper#setContentLength(int)
+     */
+    @Override
+    public void setContentLength(int len) {
+      this.addHeaderValue("Content-Length", len, true);
+    } // method: setContentLength
+
+
     /* (non-Javadoc)
      * @see javax.servlet.http.HttpServletResponseWrapper#setDateHeader(java.lang.String, long)
      */
@@ -326,7 +696,7 @@ public class RewriteFilter implements Filter {
      * @return last modified timestamp
      */
     public long getLastModified() {
-      if (this.headers.containsKey("Last-Modified")) {
+      if (this.headers.containsKey("Last-Modified") && this.headers.get("Last-Modified").get(0) instanceof Long) {
         return (Long) this.headers.get("Last-Modified").get(0);
       } else {
         return 0;
@@ -334,11 +704,23 @@ public class RewriteFilter implements Filter {
     } // method: getContentType
 
 
+    /**
+     * returns the value of the <code>ETag</code> header
+     * @return the ETag or null
+     */
+    private String getETag() {
+      return this.headers.containsKey("ETag") ? this.headers.get("ETag").get(0).toString() : null;
+    } // method: getETag
+
+
     /* (non-Javadoc)
      * @see javax.servlet.http.HttpServletResponseWrapper#containsHeader(java.lang.String)
      */
     @Override
     public boolean containsHeader(String name) {
+      if (this.unwrapped) {
+        return super.containsHeader(name);
+      }
       return this.headers.containsKey(name);
     } // method: containsHeader
 
@@ -348,6 +730,9 @@ public class RewriteFilter implements Filter {
      */
     @Override
     public ServletOutputStream getOutputStream() throws IOException {
+      if (this.unwrapped && this.writer == null && !this.stream.isCommitted()) {
+        return super.getOutputStream();
+      }
       if (this.writer != null) {
         throw new IllegalStateException("Once you used the PrintWriter you cannot use the OutputStream anymore!");
       }
@@ -360,8 +745,11 @@ public class RewriteFilter implements Filter {
      */
     @Override
     public PrintWriter getWriter() throws IOException {
+      if (this.unwrapped && this.writer == null && !this.stream.isCommitted()) {
+        return super.getWriter();
+      }
       if (this.writer == null) {
-        if (this.stream.getBytes().length > 0) {
+        if (this.stream.isCommitted()) {
           throw new IllegalStateException("Once you used the OutputStream you cannot use the PrintWriter anymore!");
         }
         this.writer = new PrintWriter(stream); // NOSONAR
@@ -385,7 +773,14 @@ public class RewriteFilter implements Filter {
      */
     @Override
     public void flushBuffer() throws IOException {
+      if (this.unwrapped) {
+        this.flushWriter();
+        this.stream.flush();
+        super.flushBuffer();
+        return;
+      }
       this.flushWriter();
+      this.stream.commit();
       this.stream.flush();
     } // method: flushBuffer
 
@@ -395,8 +790,11 @@ public class RewriteFilter implements Filter {
      */
     @Override
     public void reset() {
-      this.flushWriter();
-      this.stream.reset();
+      if (this.unwrapped) {
+        super.reset();
+        return;
+      }
+      this.resetBuffer();
     } // method: reset
 
 
@@ -405,41 +803,118 @@ public class RewriteFilter implements Filter {
      */
     @Override
     public void resetBuffer() {
-      this.flushWriter();
-      this.stream.reset();
+      if (this.unwrapped) {
+        super.resetBuffer();
+        return;
+      }
+      if (this.stream.isCommitted()) {
+        throw new IllegalStateException("The response has already been committed!");
+      }
     } // method: resetBuffer
 
 
 
     /**
-     * pipes the cached response into a real response
-     * @param response real response
+     * checks whether the content of the response will be rewritten (not for
+     * unknown content types and responses with a content encoding as they
+     * require a proper handler)
+     * @return true, if the content will be rewritten
+     */
+    private boolean isRewritable() {
+      return REWRITE_CONTENT_TYPES.contains(this.getContentType()) &&
+          !this.headers.containsKey("content-encoding");
+    } // method: isRewritable
+
+
+    /**
+     * returns the value of the <code>Content-Length</code> header
+     * @return the content length or -1 if unknown
+     */
+    private long getContentLength() {
+      List<Object> values = this.headers.get("Content-Length");
+      if (values != null) {
+        try {
+          return Long.parseLong(values.get(0).toString());
+        } catch (NumberFormatException ex) {
+          // ignore invalid content length
+        }
+      }
+      return -1;
+    } // method: getContentLength
+
+
+    /**
+     * checks whether the content will be compressed on the fly (if the
+     * content type is compressible, the content is not too small and the
+     * client accepts gzip)
+     * @return true, if the content will be compressed
+     */
+    private boolean isCompressed() {
+      long contentLength = this.getContentLength();
+      return ContentEncoding.isCompressible(this.getContentType()) &&
+          this.statusCode != HttpServletResponse.SC_NOT_MODIFIED &&
+          (contentLength == -1 || contentLength >= ContentEncoding.MIN_LENGTH) &&
+          ContentEncoding.accepts(this.request, "gzip");
+    } // method: isCompressed
+
+
+    /**
+     * commits the intercepted headers into the real response and returns the
+     * stream to write the content into: either the stream of the real response
+     * or a stream which rewrites (and compresses) the content on the fly
+     * @param empty true, if the response is committed without any content
+     * @return the stream to write the content into
      * @throws IOException
      */
-    public void pipe(HttpServletResponse response) throws IOException {
+    private OutputStream commit(boolean empty) throws IOException {
+
+      HttpServletResponse response = (HttpServletResponse) this.getResponse();
+
+      // the stream of an unwrapped response is only used if it has been
+      // requested before the response has been unwrapped
+      if (this.unwrapped) {
+        return response.getOutputStream();
+      }
+
+      // the content type can also be set as header
+      if (this.headers.containsKey("Content-Type")) {
+        this.setContentType((String) this.headers.get("Content-Type").get(0));
+      }
+      boolean rewrite = this.isRewritable();
+
+      // the identity of the resource to cache the rewritten content
+      boolean ok = this.statusCode == 0 || this.statusCode == HttpServletResponse.SC_OK;
+      if (rewrite && ok && this.cacheKey != null && (this.getETag() != null || this.getLastModified() > 0)) {
+        this.identity = this.getContentType() + "|" + this.getETag() + "|" + this.getLastModified();
+      }
+
+      // serve the cached rewritten content if the resource has not been
+      // modified (validated by conditional headers) or has the same identity
+      RewrittenResponse cached = this.cached;
+      boolean cacheHit = cached != null && cached.content != null &&
+          ((this.validate && this.statusCode == HttpServletResponse.SC_NOT_MODIFIED) || cached.identity.equals(this.identity));
+      if (cacheHit) {
+        rewrite = true;
+      }
+
+      // content without placeholders is not rewritten for the same identity
+      boolean passthrough = !cacheHit && cached != null && cached.content == null && cached.identity.equals(this.identity);
+      // the content which is not rewritten is compressed as well as the
+      // Accept-Encoding header has been hidden from the downstream resources
+      boolean compress = !cacheHit && !this.headers.containsKey("Content-Encoding") && this.isCompressed();
 
       // apply the cookies
       for (Cookie cookie : this.cookies) {
         response.addCookie(cookie);
       }
 
-      // apply the headers (except of BLOCKED_HEADERS)
+      // apply the headers (except of BLOCKED_HEADERS for rewritten or compressed content)
+      boolean transform = compress || (rewrite && !passthrough);
       for (Entry<String, List<Object>> header : this.headers.entrySet()) {
         String name = header.getKey();
-        if (!BLOCKED_HEADERS.contains(name.toLowerCase())) {
-          List<Object> values = header.getValue();
-          if ("Content-Type".equalsIgnoreCase(name)) {
-            this.setContentType((String) values.get(0));
-          } else {
-            for (Object value : values) {
-              if (value instanceof Long) {
-                response.addDateHeader(name, (Long) value);
-              } else if (value instanceof Integer) {
-                response.addIntHeader(name, (Integer) value);
-              } else {
-                response.addHeader(name, value.toString());
-              }
-            }
+        if (!"Content-Type".equalsIgnoreCase(name) && (!transform || !BLOCKED_HEADERS.contains(name.toLowerCase()))) {
+          for (Object value : header.getValue()) {
+            this.applyHeader(response, name, value, false);
           }
         }
       }
@@ -449,80 +924,211 @@ public class RewriteFilter implements Filter {
 
       // set the char encoding and the content type
       response.setCharacterEncoding(characterEncoding);
-      response.setContentType(this.getContentType());
+      response.setContentType(cacheHit ? cached.contentType : this.getContentType());
 
       // if we have a valid status code we apply it
-      if (this.statusCode > 0) {
+      if (cacheHit) {
+        response.setStatus(HttpServletResponse.SC_OK);
+      } else if (this.statusCode > 0) {
         response.setStatus(this.statusCode);
       }
 
+      // serve the cached rewritten content and ignore the downstream content
+      if (cacheHit) {
+        response.addHeader("x-sap-RewriteFilter", "rewritten");
+        byte[] encoded = this.filter.contentEncoding.encode(this.request, response, cached.contentType, cached.content, this.cacheKey + "@" + cached.identity);
+        if (encoded != cached.content && cached.etag != null) {
+          response.setHeader("ETag", ContentEncoding.toWeakETag(cached.etag));
+        }
+        response.setContentLength(encoded.length);
+        OutputStream os = response.getOutputStream();
+        os.write(encoded);
+        os.close();
+        return new NullOutputStream();
+      }
+
+      // pass through the content which is neither rewritten nor compressed
+      if (!rewrite && !compress) {
+        return response.getOutputStream();
+      }
+
+      // the content of the resource depends on the encoding
+      if (ContentEncoding.isCompressible(this.getContentType())) {
+        response.setHeader("Vary", "Accept-Encoding");
+      }
+
+      // responses without content (HEAD, 204, 304 or nothing written) are
+      // neither buffered nor compressed nor rewritten
+      if (empty || "HEAD".equals(this.request.getMethod()) ||
+          this.statusCode == HttpServletResponse.SC_NO_CONTENT || this.statusCode == HttpServletResponse.SC_NOT_MODIFIED) {
+        return response.getOutputStream();
+      }
+
+      // small transformed content is buffered to send it with its length
+      OutputStream os;
+      if (transform) {
+        os = this.buffer = new ContentLengthOutputStream(response, BufferPool.BUFFER_SIZE);
+      } else {
+        os = response.getOutputStream();
+      }
+
+      // compress the content if accepted by the client (the compressed
+      // content is semantically equivalent => weak ETag)
+      if (compress) {
+        response.setHeader("Content-Encoding", "gzip");
+        if (this.getETag() != null) {
+          response.setHeader("ETag", ContentEncoding.toWeakETag(this.getETag()));
+        }
+        os = new GZIPOutputStream(os, RewriteOutputStream.BUFFER_SIZE);
+      }
+
+      // content without placeholders or which is not rewritable is only compressed
+      if (passthrough || !rewrite) {
+        return os;
+      }
+
+      // capture the rewritten content for the cache (if not too large)
+      if (this.identity != null) {
+        os = this.capture = new CaptureOutputStream(os, this.filter.maxCacheEntrySize);
+      }
+
+      // add indicator that response has been rewritten
+      response.addHeader("x-sap-RewriteFilter", "rewritten");
+
+      // rewrite the content / replace placeholders with property values
+      return this.rewriter = new RewriteOutputStream(os, this.filter.replacements.get(characterEncoding));
+
+    } // method: commit
+
+
+    /**
+     * completes the response: flushes the remaining content into the real
+     * response (or commits the headers if no content has been written)
+     * @throws IOException
+     */
+    public void pipe() throws IOException {
+
       // flush the buffers into the stream
       this.flushWriter();
 
-      // finally let's serve the content (but do not rewrite unknown content types
-      // and responses with a content encoding as they require a proper handler)
-      if (REWRITE_CONTENT_TYPES.contains(this.getContentType()) &&
-          !this.headers.containsKey("content-encoding")) {
+      // unwrapped responses are completed by the container
+      if (this.unwrapped) {
+        this.stream.flush();
+        return;
+      }
 
-        // add indicator that response has been rewritten
-        response.addHeader("x-sap-RewriteFilter", "rewritten");
+      // the response may have been committed by the container (e.g. for errors)
+      if (!this.stream.isCommitted() && this.getResponse().isCommitted()) {
+        return;
+      }
 
-        // rewrite the content / replace placeholders with property values
-        String content = new String(this.stream.getBytes(), characterEncoding);
-        for (Map.Entry<String, String> property : this.properties.entrySet()) {
-          content = content.replaceAll(Pattern.quote("${" + property.getKey() + "}"), Matcher.quoteReplacement(property.getValue()));
+      // finally let's complete the content
+      this.stream.commit(true);
+      this.stream.close();
+
+      // cache the rewritten content (or the information that the content
+      // has no placeholders) for the identity of the resource
+      if (this.capture != null) {
+        String etag = this.getETag();
+        if (!this.rewriter.isRewritten()) {
+          this.filter.cache.put(this.cacheKey, new RewrittenResponse(this.identity, this.getContentType(), etag, this.getLastModified(), null));
+        } else {
+          byte[] content = this.capture.getContent();
+          if (content != null) {
+            this.filter.cache.put(this.cacheKey, new RewrittenResponse(this.identity, this.getContentType(), etag, this.getLastModified(), content));
+          }
         }
+      }
 
-        // write the content
-        PrintWriter responseWriter = response.getWriter();
-        responseWriter.write(content);
-        responseWriter.flush();
-        responseWriter.close();
+    } // method: pipe
 
-      } else {
-        response.getOutputStream().write(this.stream.getBytes());
-        response.getOutputStream().close();
-      }
 
-    }
+    /**
+     * releases the pooled buffers of the streams (also if the response has
+     * not been completed)
+     */
+    public void release() {
+      if (this.rewriter != null) {
+        this.rewriter.release();
+      }
+      if (this.capture != null) {
+        this.capture.release();
+      }
+      if (this.buffer != null) {
+        this.buffer.release();
+      }
+    } // method: release
 
 
   } // inner class: ResponseWrapper
 
 
   /**
-   * The class <b><code>ResponseWrapperOutputStream</code></b> is used to cache
-   * the stream.
+   * The class <b><code>ResponseWrapperOutputStream</code></b> is used to
+   * intercept the stream: the response is committed when the content is
+   * written the first time and the content is written into the stream
+   * provided by the response wrapper.
    */
   static class ResponseWrapperOutputStream extends ServletOutputStream {
 
 
-    /** the stream */
-    private ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    /** the response wrapper */
+    private final ResponseWrapper wrapper;
+
+    /** the stream to write the content into (once the response is committed) */
+    private OutputStream target;
+
+    /** flag whether the stream has been closed */
+    private boolean closed;
 
 
     /**
-     * returns the bytes
-     * @return the bytes
+     * constructs the class <code>ResponseWrapperOutputStream</code>
+     * @param wrapper the response wrapper
      */
-    public byte[] getBytes() {
-      return this.baos.toByteArray();
-    } // method: getBytes
+    ResponseWrapperOutputStream(ResponseWrapper wrapper) {
+      this.wrapper = wrapper;
+    } // constructor
 
 
     /**
-     * resets the bytes
+     * checks whether the response has been committed
+     * @return true, if the response has been committed
      */
-    public void reset() {
-      this.baos.reset();
-    } // method: reset
+    public boolean isCommitted() {
+      return this.target != null;
+    } // method: isCommitted
+
+
+    /**
+     * commits the response (if not done yet)
+     * @return the stream to write the content into
+     * @throws IOException
+     */
+    public OutputStream commit() throws IOException {
+      return this.commit(false);
+    } // method: commit
+
+
+    /**
+     * commits the response (if not done yet)
+     * @param complete true, if no more content will be written
+     * @return the stream to write the content into
+     * @throws IOException
+     */
+    public OutputStream commit(boolean complete) throws IOException {
+      if (this.target == null) {
+        this.target = this.wrapper.commit(complete);
+      }
+      return this.target;
+    } // method: commit
 
 
     /* (non-Javadoc)
      * @see java.io.OutputStream#write(int)
      */
     public void write(int b) throws IOException {
-      this.baos.write(b);
+      this.commit().write(b);
     } // method: write
 
 
@@ -531,7 +1137,10 @@ public class RewriteFilter implements Filter {
      */
     @Override
     public void close() throws IOException {
-      this.baos.close();
+      if (!this.closed) {
+        this.closed = true;
+        this.commit(true).close();
+      }
     } // method: close
 
 
@@ -540,7 +1149,9 @@ public class RewriteFilter implements Filter {
      */
     @Override
     public void flush() throws IOException {
-      this.baos.flush();
+      if (this.target != null) {
+        this.target.flush();
+      }
     } // method: flush
 
 
@@ -549,7 +1160,7 @@ public class RewriteFilter implements Filter {
      */
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-      this.baos.write(b, off, len);
+      this.commit().write(b, off, len);
     } // method: write
 
 
@@ -558,11 +1169,450 @@ public class RewriteFilter implements Filter {
      */
     @Override
     public void write(byte[] b) throws IOException {
-      this.baos.write(b);
+      this.write(b, 0, b.length);
     } // method: write
 
 
   } // inner class: ResponseWrapperOutputStream
 
 
+  /**
+   * The class <b><code>RewriteOutputStream</code></b> replaces the
+   * placeholders <code>${...}</code> in the content with the encoded values
+   * of the properties (placeholders of unknown properties are kept) and
+   * writes the content into the target stream. The placeholders are found on
+   * the bytes of the content as <code>$</code>, <code>{</code> and
+   * <code>}</code> are encoded as single bytes in the supported charsets.
+   * Only the tail of the content which could be the beginning of a
+   * placeholder is kept until the next chunk is written.
+   */
+  static class RewriteOutputStream extends OutputStream {
+
+
+    /** size of the buffers */
+    static final int BUFFER_SIZE = 8192;
+
+    /** max. length of a placeholder spanning the written chunks */
+    private static final int MAX_PLACEHOLDER_LENGTH = 256;
+
+
+    /** the target stream */
+    private final OutputStream target;
+
+    /** the encoded values of the properties (placeholder bytes as ISO-8859-1 string --> encoded value) */
+    private final Map<String, byte[]> replacements;
+
+    /** the content which is not rewritten yet (the beginning of a placeholder) */
+    private byte[] window = BufferPool.acquire();
+
+    /** length of the content in the window */
+    private int windowLength;
+
+    /** flag whether the stream has been closed */
+    private boolean closed;
+
+    /** flag whether placeholders have been replaced */
+    private boolean rewritten;
+
+
+    /**
+     * constructs the class <code>RewriteOutputStream</code>
+     * @param target the stream to write the rewritten content into
+     * @param replacements the encoded values of the properties
+     */
+    RewriteOutputStream(OutputStream target, Map<String, byte[]> replacements) {
+      this.target = target;
+      this.replacements = replacements;
+    } // constructor
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException {
+      this.write(new byte[] { (byte) b }, 0, 1);
+    } // method: write
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (this.windowLength == 0) {
+        // rewrite the chunk directly and keep only its tail
+        int keep = this.rewrite(b, off, off + len, false);
+        System.arraycopy(b, keep, this.window, 0, off + len - keep);
+        this.windowLength = off + len - keep;
+      } else {
+        // append the chunk to the window which contains the beginning of a placeholder
+        while (len > 0) {
+          int count = Math.min(len, this.window.length - this.windowLength);
+          System.arraycopy(b, off, this.window, this.windowLength, count);
+          this.windowLength += count;
+          off += count;
+          len -= count;
+          this.rewriteWindow(false);
+        }
+      }
+    } // method: write
+
+
+    /**
+     * rewrites the content of the window and keeps only its tail
+     * @param endOfInput true, if no more content will be written
+     * @throws IOException
+     */
+    private void rewriteWindow(boolean endOfInput) throws IOException {
+      int keep = this.rewrite(this.window, 0, this.windowLength, endOfInput);
+      System.arraycopy(this.window, keep, this.window, 0, this.windowLength - keep);
+      this.windowLength -= keep;
+    } // method: rewriteWindow
+
+
+    /**
+     * returns the index of the next placeholder (<code>${</code>)
+     * @param b the content
+     * @param from index to start from
+     * @param end end of the content
+     * @return the index of the placeholder or -1
+     */
+    private static int indexOfPlaceholder(byte[] b, int from, int end) {
+      for (int i = from; i < end - 1; i++) {
+        if (b[i] == '$' && b[i + 1] == '{') {
+          return i;
+        }
+      }
+      return -1;
+    } // method: indexOfPlaceholder
+
+
+    /**
+     * replaces the placeholders in the content and writes the rewritten content
+     * (an incomplete placeholder at the end of the content is kept unless it
+     * is the end of the input)
+     * @param b the content
+     * @param off offset of the content
+     * @param end end of the content
+     * @param endOfInput true, if no more content will be written
+     * @return index of the content which has not been written
+     * @throws IOException
+     */
+    private int rewrite(byte[] b, int off, int end, boolean endOfInput) throws IOException {
+      int pos = off;
+      int start = indexOfPlaceholder(b, off, end);
+      while (start != -1) {
+        int close = start + 2;
+        while (close < end && b[close] != '}') {
+          close++;
+        }
+        if (close == end) {
+          if (!endOfInput && end - start <= MAX_PLACEHOLDER_LENGTH) {
+            this.target.write(b, pos, start - pos);
+            return start;
+          }
+          start = indexOfPlaceholder(b, start + 2, end);
+          continue;
+        }
+        byte[] value = this.replacements.get(new String(b, start + 2, close - start - 2, ISO_8859_1));
+        if (value != null) {
+          this.rewritten = true;
+          this.target.write(b, pos, start - pos);
+          this.target.write(value);
+          pos = close + 1;
+          start = indexOfPlaceholder(b, pos, end);
+        } else {
+          start = indexOfPlaceholder(b, start + 2, end);
+        }
+      }
+      // a trailing $ could be the beginning of a placeholder
+      int keep = !endOfInput && end > pos && b[end - 1] == '$' ? end - 1 : end;
+      this.target.write(b, pos, keep - pos);
+      return keep;
+    } // method: rewrite
+
+
+    /**
+     * checks whether placeholders have been replaced
+     * @return true, if placeholders have been replaced
+     */
+    boolean isRewritten() {
+      return this.rewritten;
+    } // method: isRewritten
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+      this.target.flush();
+    } // method: flush
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+      if (!this.closed) {
+        this.closed = true;
+        try {
+          this.rewriteWindow(true);
+          this.target.close();
+        } finally {
+          this.release();
+        }
+      }
+    } // method: close
+
+
+    /**
+     * releases the window into the pool
+     */
+    void release() {
+      if (this.window != null) {
+        BufferPool.release(this.window);
+        this.window = null;
+      }
+    } // method: release
+
+
+  } // inner class: RewriteOutputStream
+
+
+  /**
+   * The class <b><code>CaptureOutputStream</code></b> writes the content into
+   * the target stream and captures it up to a max. size.
+   */
+  static class CaptureOutputStream extends OutputStream {
+
+
+    /** the target stream */
+    private final OutputStream target;
+
+    /** max. size of the captured content */
+    private final long maxSize;
+
+    /** the captured content or null if the content exceeds the max. size */
+    private ChunkedBuffer content = new ChunkedBuffer();
+
+
+    /**
+     * constructs the class <code>CaptureOutputStream</code>
+     * @param target the target stream
+     * @param maxSize max. size of the captured content
+     */
+    CaptureOutputStream(OutputStream target, long maxSize) {
+      this.target = target;
+      this.maxSize = maxSize;
+    } // constructor
+
+
+    /**
+     * returns the captured content
+     * @return the captured content or null if the content exceeds the max. size
+     */
+    byte[] getContent() {
+      return this.content != null ? this.content.toByteArray() : null;
+    } // method: getContent
+
+
+    /**
+     * releases the captured content into the pool
+     */
+    void release() {
+      if (this.content != null) {
+        this.content.release();
+        this.content = null;
+      }
+    } // method: release
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException {
+      this.write(new byte[] { (byte) b }, 0, 1);
+    } // method: write
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      this.target.write(b, off, len);
+      if (this.content != null) {
+        if (this.content.size() + len > this.maxSize) {
+          this.release();
+        } else {
+          this.content.write(b, off, len);
+        }
+      }
+    } // method: write
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+      this.target.flush();
+    } // method: flush
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+      this.target.close();
+    } // method: close
+
+
+  } // inner class: CaptureOutputStream
+
+
+  /**
+   * The class <b><code>ContentLengthOutputStream</code></b> buffers the
+   * content up to a max. size to send it with its length. Larger content is
+   * streamed into the response once the max. size is exceeded.
+   */
+  static class ContentLengthOutputStream extends OutputStream {
+
+
+    /** the response */
+    private final HttpServletResponse response;
+
+    /** max. size of the buffered content */
+    private final long maxSize;
+
+    /** the buffered content */
+    private final ChunkedBuffer content = new ChunkedBuffer();
+
+    /** the stream of the response or null as long as the content is buffered */
+    private OutputStream target;
+
+    /** flag whether the stream has been closed */
+    private boolean closed;
+
+
+    /**
+     * constructs the class <code>ContentLengthOutputStream</code>
+     * @param response the response
+     * @param maxSize max. size of the buffered content
+     */
+    ContentLengthOutputStream(HttpServletResponse response, long maxSize) {
+      this.response = response;
+      this.maxSize = maxSize;
+    } // constructor
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException {
+      this.write(new byte[] { (byte) b }, 0, 1);
+    } // method: write
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (this.target == null) {
+        if (this.content.size() + len <= this.maxSize) {
+          this.content.write(b, off, len);
+          return;
+        }
+        // the content is too large => stream the buffered content
+        this.target = this.response.getOutputStream();
+        this.content.writeTo(this.target);
+        this.content.release();
+      }
+      this.target.write(b, off, len);
+    } // method: write
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+      // the buffered content is only written when closing the stream
+      if (this.target != null) {
+        this.target.flush();
+      }
+    } // method: flush
+
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+      if (!this.closed) {
+        this.closed = true;
+        try {
+          if (this.target == null) {
+            this.response.setContentLength((int) this.content.size());
+            this.target = this.response.getOutputStream();
+            this.content.writeTo(this.target);
+          }
+          this.target.close();
+        } finally {
+          this.release();
+        }
+      }
+    } // method: close
+
+
+    /**
+     * releases the buffered content into the pool
+     */
+    void release() {
+      this.content.release();
+    } // method: release
+
+
+  } // inner class: ContentLengthOutputStream
+
+
+  /**
+   * The class <b><code>RewrittenResponse</code></b> keeps the rewritten
+   * content of a resource for its identity.
+   */
+  static class RewrittenResponse {
+
+    /** identity of the resource (content type, ETag and Last-Modified) */
+    final String identity;
+
+    /** the content type */
+    final String contentType;
+
+    /** the ETag or null */
+    final String etag;
+
+    /** last modified timestamp */
+    final long lastModified;
+
+    /** the rewritten content or null if the content has no placeholders */
+    final byte[] content;
+
+    RewrittenResponse(String identity, String contentType, String etag, long lastModified, byte[] content) {
+      this.identity = identity;
+      this.contentType = contentType;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.content = content;
+    } // constructor
+
+  } // inner class: RewrittenResponse
+
+
 } // class: RewriteFilter
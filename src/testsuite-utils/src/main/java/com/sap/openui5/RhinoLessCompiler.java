@@ -0,0 +1,128 @@
+package com.sap.openui5;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.tools.shell.Global;
+
+
+/**
+ * The class <code>RhinoLessCompiler</code> compiles the themes with less.js
+ * in Rhino (default and fallback of the <code>LessFilter</code>).
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+final class RhinoLessCompiler extends PooledLessCompiler<RhinoLessCompiler.RhinoScope> {
+
+
+  /** name of the compiler */
+  static final String NAME = "rhino";
+
+
+  /**
+   * constructs the class <code>RhinoLessCompiler</code>
+   * @param poolSize max. number of Rhino scopes
+   * @param resourceLoader the resource loader used by less.js to load the imports
+   */
+  RhinoLessCompiler(int poolSize, Object resourceLoader) {
+    super(poolSize, resourceLoader);
+  } // constructor
+
+
+  /* (non-Javadoc)
+   * @see com.sap.openui5.LessCompiler#getName()
+   */
+  @Override
+  public String getName() {
+    return NAME;
+  } // method: getName
+
+
+  /* (non-Javadoc)
+   * @see com.sap.openui5.PooledLessCompiler#createScope()
+   */
+  @Override
+  protected RhinoScope createScope() throws IOException {
+
+    // create a new JS execution context
+    Context context = Context.enter();
+    try {
+
+      context.setOptimizationLevel(9);
+      context.setLanguageVersion(Context.VERSION_1_7);
+
+      // initialize the global context sharing object
+      Global global = new Global();
+      global.init(context);
+
+      // create the scope
+      Scriptable scope = context.initStandardObjects(global);
+
+      // load the scripts and evaluate them in the Rhino context
+      for (String script : LESS_JS) {
+        Reader reader = openScript(script);
+        try {
+          context.evaluateReader(scope, reader, script, 1, null);
+        } finally {
+          reader.close();
+        }
+      }
+
+      // get environment object and set the resource loader used in less (see less-api.js)
+      Scriptable env = (Scriptable) scope.get("__env", scope);
+      env.put("resourceLoader", env, Context.javaToJS(this.resourceLoader, scope));
+
+      // keep the reference to the JS less API
+      return new RhinoScope(scope, (Function) scope.get("parse", scope));
+
+    } finally {
+      // exit the context
+      Context.exit();
+    }
+
+  } // method: createScope
+
+
+  /* (non-Javadoc)
+   * @see com.sap.openui5.PooledLessCompiler#compile(java.lang.Object, java.lang.String, java.lang.String, boolean, boolean, java.lang.String)
+   */
+  @Override
+  protected Result compile(RhinoScope scope, String input, String path, boolean compressCSS, boolean compressJSON, String libraryName) {
+
+    // compile the CSS/JSON within the Rhino environment
+    Scriptable result = (Scriptable) Context.call(null, scope.parse, scope.scope, scope.scope, new Object[] { input, path, compressCSS, compressJSON, libraryName });
+
+    return new Result(
+      Context.toString(ScriptableObject.getProperty(result, "css")),
+      Context.toString(ScriptableObject.getProperty(result, "cssRtl")),
+      Context.toString(ScriptableObject.getProperty(result, "json")),
+      Context.toString(ScriptableObject.getProperty(result, "resources")));
+
+  } // method: compile
+
+
+  /**
+   * The class <code>RhinoScope</code> keeps a Rhino scope with an initialized
+   * Less Compiler (a scope must only be used by one thread at a time).
+   */
+  static class RhinoScope {
+
+    /** the scope of the rhino */
+    final Scriptable scope;
+
+    /** function to parse the less input */
+    final Function parse;
+
+    RhinoScope(Scriptable scope, Function parse) {
+      this.scope = scope;
+      this.parse = parse;
+    } // constructor
+
+  } // inner class: RhinoScope
+
+
+} // class: RhinoLessCompiler
@@ -0,0 +1,124 @@
+package com.sap.openui5;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+
+/**
+ * The class <code>ScriptEngineLessCompiler</code> compiles the themes with
+ * less.js in a JSR-223 script engine (e.g. <code>nashorn</code> or
+ * <code>graal.js</code>). Each scope of the pool is an own instance of the
+ * script engine.
+ * <p>
+ * <i>This class must not be used in productive systems.</i>
+ */
+final class ScriptEngineLessCompiler extends PooledLessCompiler<ScriptEngine> {
+
+
+  /** the script engine manager */
+  private final ScriptEngineManager manager = new ScriptEngineManager(ScriptEngineLessCompiler.class.getClassLoader());
+
+  /** name of the script engine */
+  private final String engineName;
+
+
+  /**
+   * constructs the class <code>ScriptEngineLessCompiler</code>
+   * @param engineName name of the script engine
+   * @param poolSize max. number of script engine instances
+   * @param resourceLoader the resource loader used by less.js to load the imports
+   */
+  ScriptEngineLessCompiler(String engineName, int poolSize, Object resourceLoader) {
+    super(poolSize, resourceLoader);
+    this.engineName = engineName;
+  } // constructor
+
+
+  /* (non-Javadoc)
+   * @see com.sap.openui5.LessCompiler#getName()
+   */
+  @Override
+  public String getName() {
+    return this.engineName;
+  } // method: getName
+
+
+  /* (non-Javadoc)
+   * @see com.sap.openui5.PooledLessCompiler#createScope()
+   */
+  @Override
+  protected ScriptEngine createScope() throws IOException {
+
+    ScriptEngine engine = this.manager.getEngineByName(this.engineName);
+    if (engine == null) {
+      throw new IOException("The script engine " + this.engineName + " is not available!");
+    }
+
+    try {
+
+      // GraalJS requires the host access to call the resource loader
+      Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+      bindings.put("polyglot.js.allowHostAccess", Boolean.TRUE);
+
+      // load the scripts and evaluate them in the script engine
+      for (String script : LESS_JS) {
+        Reader reader = openScript(script);
+        try {
+          engine.put(ScriptEngine.FILENAME, script);
+          engine.eval(reader);
+        } finally {
+          reader.close();
+        }
+      }
+
+      // set the resource loader used in less (see less-api.js)
+      engine.put("__resourceLoader", this.resourceLoader);
+      engine.eval("__env.resourceLoader = __resourceLoader;");
+
+    } catch (ScriptException ex) {
+      throw new IOException("Failed to initialize less.js in the script engine " + this.engineName + "!", ex);
+    }
+
+    return engine;
+
+  } // method: createScope
+
+
+  /* (non-Javadoc)
+   * @see com.sap.openui5.PooledLessCompiler#compile(java.lang.Object, java.lang.String, java.lang.String, boolean, boolean, java.lang.String)
+   */
+  @Override
+  protected Result compile(ScriptEngine engine, String input, String path, boolean compressCSS, boolean compressJSON, String libraryName) throws IOException {
+
+    // compile the CSS/JSON within the script engine
+    Object result;
+    try {
+      result = ((Invocable) engine).invokeFunction("parse", input, path, compressCSS, compressJSON, libraryName);
+    } catch (ScriptException ex) {
+      throw new IOException(ex.getMessage(), ex);
+    } catch (NoSuchMethodException ex) {
+      throw new IOException("The function parse is not defined in less-api.js!", ex);
+    }
+    if (!(result instanceof Map)) {
+      throw new IOException("Unexpected result of the compilation: " + result);
+    }
+
+    Map<?, ?> map = (Map<?, ?>) result;
+    return new Result(
+      String.valueOf(map.get("css")),
+      String.valueOf(map.get("cssRtl")),
+      String.valueOf(map.get("json")),
+      String.valueOf(map.get("resources")));
+
+  } // method: compile
+
+
+} // class: ScriptEngineLessCompiler
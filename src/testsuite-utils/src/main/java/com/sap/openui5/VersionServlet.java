@@ -1,7 +1,7 @@
 package com.sap.openui5;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -44,11 +44,15 @@ public class VersionServlet extends HttpServlet {
     response.setContentType("application/json");
     response.setStatus(HttpServletResponse.SC_OK);
 
-    PrintWriter writer = response.getWriter();
     Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    writer.write(gson.toJson(discovery.getVersionInfo()));
-    writer.flush();
-    writer.close();
+    byte[] content = gson.toJson(discovery.getVersionInfo()).getBytes("UTF-8");
+    content = ContentEncoding.getInstance(this.getServletContext()).encode(request, response, "application/json", content);
+    response.setContentLength(content.length);
+
+    OutputStream os = response.getOutputStream();
+    os.write(content);
+    os.flush();
+    os.close();
 
   } // method: doGet
 
@@ -12,6 +12,11 @@ var __lessTreeRuleEval = window.less.tree.Rule.prototype.eval;
 
 var __env = context.__env = {};
 
+// Cache for the parsed imports (path => { lastModified, content, root }) which
+// is shared across all compilations of this scope - the import visitor
+// re-evaluates the import nodes of the cached roots for each compilation
+var mImportCache = {};
+
 /**
  * Convenience function to parse string
  */
@@ -49,6 +54,15 @@ var parse = context.parse = function(sData, sPath, bCompress, bCompressJSON, sLi
 		}
 		try {
 			aResources.push(sPath);
+			// reuse the parsed import as long as the resource is not modified
+			var sCacheKey = normalizePath(sPath),
+				iLastModified = Number(__env.resourceLoader.lastModified(sPath)),
+				oCachedImport = mImportCache[sCacheKey];
+			if (oCachedImport && iLastModified > 0 && oCachedImport.lastModified === iLastModified) {
+				mEnv.contents[sPath] = mEnv.contents[oCachedImport.path] = oCachedImport.content;
+				fnCallback(null, oCachedImport.root, sPath);
+				return;
+			}
 			var sContent = String(__env.resourceLoader.load(sPath));
 			// save content in filename-content map
 			// this is a workaround for an exception that occurs in the less-coding when using
@@ -63,6 +77,16 @@ var parse = context.parse = function(sData, sPath, bCompress, bCompressJSON, sLi
 				if (ex) {
 					throw ex;
 				}
+				if (iLastModified > 0) {
+					mImportCache[sCacheKey] = {
+						path: sPath,
+						lastModified: iLastModified,
+						content: sContent,
+						root: root
+					};
+				} else {
+					delete mImportCache[sCacheKey];
+				}
 				fnCallback(ex, root, sPath);
 			});
 		} catch (ex) {
@@ -168,5 +192,22 @@ function getBasePath(sPath) {
 	return (sPath) ? sPath.replace(/^(.*[\/\\])[^\/\\]*$/, '$1') : '';
 }
 
+/**
+ * Returns the given path without the "." and ".." segments
+ */
+function normalizePath(sPath) {
+	var aSegments = [];
+	sPath.split("/").forEach(function(sSegment, i, aAll) {
+		if (sSegment === "..") {
+			if (aSegments.length > 1) {
+				aSegments.pop();
+			}
+		} else if (sSegment !== "." || i === aAll.length - 1) {
+			aSegments.push(sSegment === "." ? "" : sSegment);
+		}
+	});
+	return aSegments.join("/");
+}
+
 /* eslint-enable no-unused-vars */
 })(window.less, this);